@@ -0,0 +1,34 @@
+package tutorial.batching.benchmark;
+
+import io.baratine.core.Result;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import tutorial.batching.LogConfig;
+import tutorial.batching.LogServiceImpl;
+
+/**
+ * Baseline that hands every message to the writer on its own, as if the
+ * service had no batching.
+ */
+public class FlushPerMessageLogServiceImpl extends LogServiceImpl
+{
+  public FlushPerMessageLogServiceImpl(LogConfig config)
+  {
+    super(config);
+  }
+
+  @Override
+  public void log(String msg, Result<Void> result)
+  {
+    super.log(msg, result);
+
+    try {
+      afterBatch();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package tutorial.batching.benchmark;
+
+import io.baratine.core.ResultFuture;
+import io.baratine.core.ServiceManager;
+import io.baratine.core.ServiceRef;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.caucho.baratine.Baratine;
+import com.caucho.baratine.embed.ServerBaratine;
+
+import tutorial.batching.LogConfig;
+import tutorial.batching.LogService;
+import tutorial.batching.LogServiceImpl;
+
+/**
+ * Throughput and latency of LogService.log() against an in-process server.
+ *
+ * <pre>
+ *   message - every message is written on its own, no batching
+ *   batch   - written once per inbox batch in @AfterBatch
+ *   durable - written and forced once per inbox batch
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LogServiceBenchmark
+{
+  private static final String MESSAGE
+    = "127.0.0.1 - - [18/Oct/2026:10:00:00 +0000] \"GET /index.html HTTP/1.1\" 200 4096";
+
+  @Param({"message", "batch", "durable"})
+  public String mode;
+
+  private Path _root;
+  private ServerBaratine _server;
+  private LogService _service;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws IOException
+  {
+    _root = Files.createTempDirectory("log-benchmark");
+
+    LogConfig config = new LogConfig().directory(_root.resolve("log").toString())
+                                      .durable("durable".equals(mode));
+
+    LogServiceImpl impl;
+
+    if ("message".equals(mode)) {
+      impl = new FlushPerMessageLogServiceImpl(config);
+    }
+    else {
+      impl = new LogServiceImpl(config);
+    }
+
+    _server = Baratine.newServer()
+                      .port(8086)
+                      .root("file:" + _root.resolve("baratine"))
+                      .build();
+
+    ServiceManager manager = _server.newPod("pod")
+                                    .build()
+                                    .manager();
+
+    ServiceRef ref = manager.newService()
+                            .address("public:///log")
+                            .service(impl)
+                            .build();
+
+    _service = ref.as(LogService.class);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+    throws IOException
+  {
+    _server.close();
+
+    Files.walkFileTree(_root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+        throws IOException
+      {
+        Files.delete(file);
+
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e)
+        throws IOException
+      {
+        Files.delete(dir);
+
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Benchmark
+  public void logFireAndForget()
+  {
+    _service.log(MESSAGE);
+  }
+
+  @Benchmark
+  public void logAndWait()
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    _service.log(MESSAGE, future);
+
+    future.get();
+  }
+
+  /**
+   * Runs the benchmarks for a range of producer thread counts.
+   */
+  public static void main(String []args)
+    throws Exception
+  {
+    for (int threads : new int[] { 1, 4, 16 }) {
+      Options options = new OptionsBuilder()
+        .include(LogServiceBenchmark.class.getSimpleName())
+        .threads(threads)
+        .build();
+
+      new Runner(options).run();
+    }
+  }
+}
@@ -7,10 +7,10 @@ public class LogClient
   public static void main(String []args)
     throws Exception
   {
-    String message = "logme timbers";
+    int count = 100;
 
     if (args.length > 0) {
-      message = args[0];
+      count = Integer.parseInt(args[0]);
     }
 
     try (BaratineClient client = new BaratineClient("http://127.0.0.1:8085/s/pod"))
@@ -18,7 +18,13 @@ public class LogClient
       // remote:// is for clients outside a Baratine system
       LogService service = client.lookup("remote:///log").as(LogService.class);
 
-      service.log(message);
+      // one coalescer for every line: it sends up to 1000 lines per call,
+      // and at least every 10ms, and close() sends whatever is left
+      try (LogCoalescer logger = new LogCoalescer(service, 1000, 10)) {
+        for (int i = 0; i < count; i++) {
+          logger.log("logme timbers " + i);
+        }
+      }
 
       Thread.sleep(1000 * 5);
     }
@@ -0,0 +1,69 @@
+package tutorial.batching;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), which java.util.zip only provides from Java 9.
+ * The ByteBuffer methods use absolute reads so checksumming a record never
+ * moves the buffer or allocates.
+ */
+public class Crc32c implements Checksum
+{
+  private static final int []TABLE = new int[256];
+
+  private int _crc = 0xffffffff;
+
+  @Override
+  public void update(int b)
+  {
+    _crc = (_crc >>> 8) ^ TABLE[(_crc ^ b) & 0xff];
+  }
+
+  @Override
+  public void update(byte []buffer, int offset, int length)
+  {
+    int crc = _crc;
+
+    for (int i = 0; i < length; i++) {
+      crc = (crc >>> 8) ^ TABLE[(crc ^ buffer[offset + i]) & 0xff];
+    }
+
+    _crc = crc;
+  }
+
+  public void update(ByteBuffer buffer, int offset, int length)
+  {
+    int crc = _crc;
+
+    for (int i = 0; i < length; i++) {
+      crc = (crc >>> 8) ^ TABLE[(crc ^ buffer.get(offset + i)) & 0xff];
+    }
+
+    _crc = crc;
+  }
+
+  @Override
+  public long getValue()
+  {
+    return ~_crc & 0xffffffffL;
+  }
+
+  @Override
+  public void reset()
+  {
+    _crc = 0xffffffff;
+  }
+
+  static {
+    for (int i = 0; i < TABLE.length; i++) {
+      int crc = i;
+
+      for (int k = 0; k < 8; k++) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82f63b78 : crc >>> 1;
+      }
+
+      TABLE[i] = crc;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package tutorial.batching;
+
+/**
+ * Low-overhead histogram with power-of-two buckets, recorded with plain
+ * primitive counters.  Each histogram has a single writer thread; readers
+ * on other threads see approximate values, which is fine for metrics.
+ */
+public class Histogram
+{
+  private final long []_buckets = new long[64];
+
+  private long _count;
+  private long _sum;
+  private long _max;
+
+  public void record(long value)
+  {
+    if (value < 0) {
+      value = 0;
+    }
+
+    _buckets[64 - Long.numberOfLeadingZeros(value)]++;
+
+    _count++;
+    _sum += value;
+
+    if (_max < value) {
+      _max = value;
+    }
+  }
+
+  public long getCount()
+  {
+    return _count;
+  }
+
+  public long getSum()
+  {
+    return _sum;
+  }
+
+  public long getMax()
+  {
+    return _max;
+  }
+
+  /**
+   * Returns the upper bound of the bucket holding the percentile, so the
+   * value is within a factor of two.
+   */
+  public long getPercentile(double percentile)
+  {
+    long count = _count;
+
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(percentile / 100.0 * count);
+    long seen = 0;
+
+    for (int i = 0; i < _buckets.length; i++) {
+      seen += _buckets[i];
+
+      if (rank <= seen) {
+        long bound = i == 0 ? 0 : (1L << i) - 1;
+
+        return Math.min(bound, _max);
+      }
+    }
+
+    return _max;
+  }
+
+  public HistogramSnapshot snapshot()
+  {
+    long count = _count;
+
+    return new HistogramSnapshot(count,
+                                 count > 0 ? _sum / count : 0,
+                                 getPercentile(50),
+                                 getPercentile(99),
+                                 getPercentile(99.9),
+                                 _max);
+  }
+}
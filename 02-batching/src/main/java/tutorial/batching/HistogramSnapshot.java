@@ -0,0 +1,67 @@
+package tutorial.batching;
+
+public class HistogramSnapshot
+{
+  private long _count;
+  private long _mean;
+  private long _p50;
+  private long _p99;
+  private long _p999;
+  private long _max;
+
+  public HistogramSnapshot()
+  {
+  }
+
+  public HistogramSnapshot(long count, long mean, long p50, long p99, long p999, long max)
+  {
+    _count = count;
+    _mean = mean;
+    _p50 = p50;
+    _p99 = p99;
+    _p999 = p999;
+    _max = max;
+  }
+
+  public long getCount()
+  {
+    return _count;
+  }
+
+  public long getMean()
+  {
+    return _mean;
+  }
+
+  public long getP50()
+  {
+    return _p50;
+  }
+
+  public long getP99()
+  {
+    return _p99;
+  }
+
+  public long getP999()
+  {
+    return _p999;
+  }
+
+  public long getMax()
+  {
+    return _max;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName()
+           + "[count=" + _count
+           + ",mean=" + _mean
+           + ",p50=" + _p50
+           + ",p99=" + _p99
+           + ",p999=" + _p999
+           + ",max=" + _max + "]";
+  }
+}
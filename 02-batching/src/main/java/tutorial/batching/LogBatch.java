@@ -0,0 +1,98 @@
+package tutorial.batching;
+
+import io.baratine.core.Result;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * One of the two buffers of the double-buffered writer: the framed records
+ * of a batch, plus the results that complete when the batch is durable.
+ *
+ * The buffer is reused from batch to batch, so encoding a message allocates
+ * nothing.  It is a heap buffer because the Deflater needs a backing array.
+ */
+public class LogBatch
+{
+  private ByteBuffer _records = ByteBuffer.allocate(64 * 1024);
+  private final ArrayList<Result<Void>> _results = new ArrayList<>();
+
+  private long _firstSequence;
+  private long _firstTimestamp;
+  private int _count;
+
+  public void append(long sequence, long timestamp, String msg, Crc32c crc)
+  {
+    int length = LogRecord.getMaxLength(msg);
+
+    if (_records.remaining() < length) {
+      int capacity = Math.max(2 * _records.capacity(), _records.position() + length);
+
+      ByteBuffer records = ByteBuffer.allocate(capacity);
+
+      _records.flip();
+      records.put(_records);
+
+      _records = records;
+    }
+
+    LogRecord.write(_records, sequence, timestamp, msg, crc);
+
+    if (_count++ == 0) {
+      _firstSequence = sequence;
+      _firstTimestamp = timestamp;
+    }
+  }
+
+  public void addResult(Result<Void> result)
+  {
+    _results.add(result);
+  }
+
+  public boolean isEmpty()
+  {
+    return _count == 0 && _results.isEmpty();
+  }
+
+  /**
+   * The framed records, from zero to the buffer's position.
+   */
+  public ByteBuffer getRecords()
+  {
+    return _records;
+  }
+
+  public int getCount()
+  {
+    return _count;
+  }
+
+  public long getFirstSequence()
+  {
+    return _firstSequence;
+  }
+
+  public long getFirstTimestamp()
+  {
+    return _firstTimestamp;
+  }
+
+  public void complete(Throwable exn)
+  {
+    for (Result<Void> result : _results) {
+      if (exn == null) {
+        result.complete(null);
+      }
+      else {
+        result.fail(exn);
+      }
+    }
+  }
+
+  public void clear()
+  {
+    _records.clear();
+    _results.clear();
+    _count = 0;
+  }
+}
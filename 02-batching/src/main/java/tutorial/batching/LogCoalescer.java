@@ -0,0 +1,143 @@
+package tutorial.batching;
+
+import io.baratine.core.Result;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side wrapper around a <code>LogService</code> proxy that gathers
+ * lines and sends them as a single <code>logAll()</code> call, either when
+ * <code>maxBatch</code> lines are pending or when the time window expires.
+ */
+public class LogCoalescer implements AutoCloseable
+{
+  private final LogService _service;
+  private final int _maxBatch;
+
+  private final ScheduledExecutorService _timer;
+  private final ScheduledFuture<?> _timerFuture;
+
+  private ArrayList<String> _msgs = new ArrayList<>();
+  private ArrayList<Result<Void>> _results = new ArrayList<>();
+
+  public LogCoalescer(LogService service, int maxBatch, long windowMs)
+  {
+    _service = service;
+    _maxBatch = maxBatch;
+
+    _timer = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, getClass().getSimpleName());
+      thread.setDaemon(true);
+
+      return thread;
+    });
+
+    _timerFuture = _timer.scheduleWithFixedDelay(this::flush,
+                                                 windowMs, windowMs,
+                                                 TimeUnit.MILLISECONDS);
+  }
+
+  public void log(String msg)
+  {
+    log(msg, null);
+  }
+
+  /**
+   * The result completes when the batch holding the line completes.
+   */
+  public void log(String msg, Result<Void> result)
+  {
+    ArrayList<String> msgs = null;
+    ArrayList<Result<Void>> results = null;
+
+    synchronized (this) {
+      _msgs.add(msg);
+
+      if (result != null) {
+        _results.add(result);
+      }
+
+      if (_msgs.size() >= _maxBatch) {
+        msgs = _msgs;
+        results = _results;
+
+        _msgs = new ArrayList<>();
+        _results = new ArrayList<>();
+      }
+    }
+
+    if (msgs != null) {
+      send(msgs, results);
+    }
+  }
+
+  public void flush()
+  {
+    ArrayList<String> msgs;
+    ArrayList<Result<Void>> results;
+
+    synchronized (this) {
+      if (_msgs.isEmpty()) {
+        return;
+      }
+
+      msgs = _msgs;
+      results = _results;
+
+      _msgs = new ArrayList<>();
+      _results = new ArrayList<>();
+    }
+
+    send(msgs, results);
+  }
+
+  private void send(ArrayList<String> msgs, ArrayList<Result<Void>> results)
+  {
+    if (results.isEmpty()) {
+      // fire-and-forget
+      _service.logAll(msgs);
+    }
+    else {
+      _service.logAll(msgs, new BatchResult(results));
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    _timerFuture.cancel(false);
+    _timer.shutdown();
+
+    flush();
+  }
+
+  static class BatchResult implements Result<Void>
+  {
+    private final ArrayList<Result<Void>> _results;
+
+    BatchResult(ArrayList<Result<Void>> results)
+    {
+      _results = results;
+    }
+
+    @Override
+    public void complete(Void value)
+    {
+      for (Result<Void> result : _results) {
+        result.complete(null);
+      }
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      for (Result<Void> result : _results) {
+        result.fail(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package tutorial.batching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the records of one batch to the log as a single deflated block.
+ */
+public class LogCompressor
+{
+  private final Deflater _deflater;
+
+  private byte []_out = new byte[64 * 1024];
+
+  public LogCompressor(int level)
+  {
+    _deflater = new Deflater(level);
+  }
+
+  public void writeBlock(LogBatch batch, LogSegments segments, Crc32c crc)
+    throws IOException
+  {
+    ByteBuffer records = batch.getRecords();
+    int rawLength = records.position();
+
+    _deflater.reset();
+    _deflater.setInput(records.array(), 0, rawLength);
+    _deflater.finish();
+
+    int length = 0;
+
+    while (! _deflater.finished()) {
+      if (length == _out.length) {
+        byte []out = new byte[2 * _out.length];
+        System.arraycopy(_out, 0, out, 0, length);
+        _out = out;
+      }
+
+      length += _deflater.deflate(_out, length, _out.length - length);
+    }
+
+    ByteBuffer buffer = segments.reserve(LogRecord.HEADER_SIZE
+                                         + LogRecord.BLOCK_HEADER_SIZE
+                                         + length);
+
+    long offset = segments.getEndOffset();
+
+    LogRecord.writeBlock(buffer,
+                         batch.getFirstSequence(),
+                         batch.getFirstTimestamp(),
+                         batch.getCount(),
+                         rawLength, _out, length,
+                         crc);
+
+    segments.index(batch.getFirstSequence(), batch.getFirstTimestamp(), offset);
+  }
+
+  public void close()
+  {
+    _deflater.end();
+  }
+}
@@ -0,0 +1,134 @@
+package tutorial.batching;
+
+import java.util.zip.Deflater;
+
+public class LogConfig
+{
+  private String _directory = "/tmp/tutorial_log";
+  private boolean _isDurable;
+
+  private int _segmentSize = 16 * 1024 * 1024;
+  private long _retentionBytes = 1024L * 1024 * 1024;
+  private long _retentionAge = 7 * 24 * 3600 * 1000L;
+
+  private int _indexInterval = 4096;
+
+  private boolean _isCompressed;
+  private int _compressionLevel = Deflater.BEST_SPEED;
+
+  public LogConfig directory(String directory)
+  {
+    _directory = directory;
+
+    return this;
+  }
+
+  public String getDirectory()
+  {
+    return _directory;
+  }
+
+  /**
+   * In durable mode, results complete only after the batch has been forced
+   * to disk with a single fsync.
+   */
+  public LogConfig durable(boolean isDurable)
+  {
+    _isDurable = isDurable;
+
+    return this;
+  }
+
+  public boolean isDurable()
+  {
+    return _isDurable;
+  }
+
+  /**
+   * Size of each preallocated, memory-mapped segment file.
+   */
+  public LogConfig segmentSize(int segmentSize)
+  {
+    _segmentSize = segmentSize;
+
+    return this;
+  }
+
+  public int getSegmentSize()
+  {
+    return _segmentSize;
+  }
+
+  /**
+   * Old segments are deleted once the log grows past this many bytes.
+   */
+  public LogConfig retentionBytes(long retentionBytes)
+  {
+    _retentionBytes = retentionBytes;
+
+    return this;
+  }
+
+  public long getRetentionBytes()
+  {
+    return _retentionBytes;
+  }
+
+  /**
+   * Segments that were sealed longer ago than this, in milliseconds, are
+   * deleted.
+   */
+  public LogConfig retentionAge(long retentionAge)
+  {
+    _retentionAge = retentionAge;
+
+    return this;
+  }
+
+  public long getRetentionAge()
+  {
+    return _retentionAge;
+  }
+
+  /**
+   * Approximate number of log bytes between sparse index entries.
+   */
+  public LogConfig indexInterval(int indexInterval)
+  {
+    _indexInterval = indexInterval;
+
+    return this;
+  }
+
+  public int getIndexInterval()
+  {
+    return _indexInterval;
+  }
+
+  /**
+   * In compressed mode, each batch is written as one deflated block.
+   */
+  public LogConfig compressed(boolean isCompressed)
+  {
+    _isCompressed = isCompressed;
+
+    return this;
+  }
+
+  public boolean isCompressed()
+  {
+    return _isCompressed;
+  }
+
+  public LogConfig compressionLevel(int compressionLevel)
+  {
+    _compressionLevel = compressionLevel;
+
+    return this;
+  }
+
+  public int getCompressionLevel()
+  {
+    return _compressionLevel;
+  }
+}
@@ -0,0 +1,61 @@
+package tutorial.batching;
+
+public class LogEntry
+{
+  private long _offset;
+  private long _nextOffset;
+  private long _sequence;
+  private long _timestamp;
+  private String _message;
+
+  public LogEntry()
+  {
+  }
+
+  public LogEntry(long offset,
+                  long nextOffset,
+                  long sequence,
+                  long timestamp,
+                  String message)
+  {
+    _offset = offset;
+    _nextOffset = nextOffset;
+    _sequence = sequence;
+    _timestamp = timestamp;
+    _message = message;
+  }
+
+  public long getOffset()
+  {
+    return _offset;
+  }
+
+  /**
+   * Offset of the record following this one, where a tailing reader resumes.
+   */
+  public long getNextOffset()
+  {
+    return _nextOffset;
+  }
+
+  public long getSequence()
+  {
+    return _sequence;
+  }
+
+  public long getTimestamp()
+  {
+    return _timestamp;
+  }
+
+  public String getMessage()
+  {
+    return _message;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _sequence + "@" + _offset + " " + _message + "]";
+  }
+}
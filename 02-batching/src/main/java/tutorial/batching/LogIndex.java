@@ -0,0 +1,225 @@
+package tutorial.batching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Sparse index next to each segment, mapping sequence numbers and timestamps
+ * to log offsets.  Each entry is three longs: sequence, timestamp, offset.
+ * The first record of a segment is always indexed, then one record every
+ * <code>indexInterval</code> bytes.
+ *
+ * Lookups binary-search the index files and return an offset at or before
+ * the wanted record, so a reader only scans forward a short distance.
+ */
+public class LogIndex
+{
+  private static final int ENTRY_SIZE = 24;
+
+  private static final int SEQUENCE = 0;
+  private static final int TIMESTAMP = 8;
+  private static final int OFFSET = 16;
+
+  private final int _interval;
+
+  private FileChannel _out;
+  private final ByteBuffer _buffer = ByteBuffer.allocate(64 * ENTRY_SIZE);
+
+  private long _lastOffset = -1;
+
+  public LogIndex(LogConfig config)
+  {
+    _interval = config.getIndexInterval();
+  }
+
+  /**
+   * Starts writing the index of the active segment, dropping entries past
+   * the recovered end of its data.
+   */
+  public void open(LogSegment segment)
+    throws IOException
+  {
+    close();
+
+    _out = FileChannel.open(segment.getIndexPath(),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+
+    long count = _out.size() / ENTRY_SIZE;
+    ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+    while (count > 0) {
+      entry.clear();
+      _out.read(entry, (count - 1) * ENTRY_SIZE);
+
+      if (entry.getLong(OFFSET) < segment.getEndOffset()) {
+        _lastOffset = entry.getLong(OFFSET);
+        break;
+      }
+
+      count--;
+    }
+
+    _out.truncate(count * ENTRY_SIZE);
+    _out.position(count * ENTRY_SIZE);
+
+    if (count == 0) {
+      _lastOffset = -1;
+    }
+  }
+
+  public void add(long sequence, long timestamp, long offset)
+    throws IOException
+  {
+    if (_lastOffset >= 0 && offset - _lastOffset < _interval) {
+      return;
+    }
+
+    if (! _buffer.hasRemaining()) {
+      flush();
+    }
+
+    _buffer.putLong(sequence);
+    _buffer.putLong(timestamp);
+    _buffer.putLong(offset);
+
+    _lastOffset = offset;
+  }
+
+  public void flush()
+    throws IOException
+  {
+    _buffer.flip();
+
+    while (_buffer.hasRemaining()) {
+      _out.write(_buffer);
+    }
+
+    _buffer.clear();
+  }
+
+  public void close()
+    throws IOException
+  {
+    if (_out != null) {
+      flush();
+
+      _out.close();
+      _out = null;
+    }
+  }
+
+  /**
+   * Returns an offset at or before the record with the sequence.
+   */
+  public static long findSequence(Path dir, long sequence)
+    throws IOException
+  {
+    return find(dir, SEQUENCE, sequence);
+  }
+
+  /**
+   * Returns an offset at or before the first record with a timestamp of at
+   * least <code>timestamp</code>.
+   */
+  public static long findTimestamp(Path dir, long timestamp)
+    throws IOException
+  {
+    return find(dir, TIMESTAMP, timestamp);
+  }
+
+  private static long find(Path dir, int field, long key)
+    throws IOException
+  {
+    ArrayList<Path> paths = LogSegment.list(dir);
+
+    if (paths.isEmpty()) {
+      return 0;
+    }
+
+    // last segment whose first record is before the key
+    int lo = 0;
+    int hi = paths.size() - 1;
+
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+
+      if (readFirst(paths.get(mid), field) < key) {
+        lo = mid;
+      }
+      else {
+        hi = mid - 1;
+      }
+    }
+
+    Path path = paths.get(lo);
+
+    try (FileChannel in = FileChannel.open(LogSegment.toIndexPath(path),
+                                           StandardOpenOption.READ)) {
+      ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+      // last entry before the key
+      long offset = LogSegment.toBaseOffset(path);
+      long entryLo = 0;
+      long entryHi = in.size() / ENTRY_SIZE - 1;
+
+      while (entryLo <= entryHi) {
+        long mid = (entryLo + entryHi) >>> 1;
+
+        read(in, mid, entry);
+
+        if (entry.getLong(field) < key) {
+          offset = entry.getLong(OFFSET);
+          entryLo = mid + 1;
+        }
+        else {
+          entryHi = mid - 1;
+        }
+      }
+
+      return offset;
+    }
+    catch (IOException e) {
+      // without an index, scan the segment from its start
+      return LogSegment.toBaseOffset(path);
+    }
+  }
+
+  private static long readFirst(Path path, int field)
+    throws IOException
+  {
+    Path indexPath = LogSegment.toIndexPath(path);
+
+    if (! Files.exists(indexPath) || Files.size(indexPath) < ENTRY_SIZE) {
+      // an empty segment; sorting it last makes the search start earlier,
+      // which is always safe because the reader scans forward
+      return Long.MAX_VALUE;
+    }
+
+    try (FileChannel in = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+      read(in, 0, entry);
+
+      return entry.getLong(field);
+    }
+  }
+
+  private static void read(FileChannel in, long index, ByteBuffer entry)
+    throws IOException
+  {
+    entry.clear();
+
+    while (entry.hasRemaining()) {
+      if (in.read(entry, index * ENTRY_SIZE + entry.position()) < 0) {
+        throw new IOException("truncated index entry " + index);
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package tutorial.batching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Scans records from the segment files.  Each segment is mapped read-only,
+ * so records are read in bulk straight from the page cache.  Compressed
+ * blocks are inflated and their records visited in order.
+ */
+public class LogReader
+{
+  private final Path _dir;
+  private final Crc32c _crc = new Crc32c();
+
+  private final Inflater _inflater = new Inflater();
+  private byte []_input = new byte[0];
+  private byte []_raw = new byte[0];
+
+  public LogReader(Path dir)
+  {
+    _dir = dir;
+  }
+
+  /**
+   * Visits the valid records starting at the log offset, stopping at the end
+   * of the log or when the visitor returns false.
+   *
+   * @return the offset just past the last visited record
+   */
+  public long scan(long offset, RecordVisitor visitor)
+    throws IOException
+  {
+    ArrayList<Path> paths = LogSegment.list(_dir);
+
+    int i = paths.size() - 1;
+
+    while (i > 0 && LogSegment.toBaseOffset(paths.get(i)) > offset) {
+      i--;
+    }
+
+    for (; i < paths.size(); i++) {
+      Path path = paths.get(i);
+      long baseOffset = LogSegment.toBaseOffset(path);
+
+      // retention may already have deleted the requested offset
+      offset = Math.max(offset, baseOffset);
+
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer
+          = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        int pos = (int) (offset - baseOffset);
+        int size;
+
+        while ((size = LogRecord.check(buffer, pos, _crc)) > 0) {
+          long recordOffset = baseOffset + pos;
+          long nextOffset = recordOffset + size;
+
+          boolean isMore;
+
+          if (LogRecord.isBlock(buffer, pos)) {
+            isMore = scanBlock(recordOffset, nextOffset, buffer, pos, visitor);
+          }
+          else {
+            isMore = visitor.visit(recordOffset, nextOffset, buffer, pos);
+          }
+
+          if (! isMore) {
+            return recordOffset;
+          }
+
+          pos += size;
+        }
+
+        offset = baseOffset + pos;
+      }
+    }
+
+    return offset;
+  }
+
+  /**
+   * Records in a block have no offset of their own, so they are all visited
+   * with the offset of the block.
+   */
+  private boolean scanBlock(long offset,
+                            long nextOffset,
+                            ByteBuffer buffer,
+                            int pos,
+                            RecordVisitor visitor)
+    throws IOException
+  {
+    int dataLength = LogRecord.getLength(buffer, pos) - LogRecord.BLOCK_HEADER_SIZE;
+    int rawLength = LogRecord.getBlockRawLength(buffer, pos);
+
+    if (_input.length < dataLength) {
+      _input = new byte[dataLength];
+    }
+
+    if (_raw.length < rawLength) {
+      _raw = new byte[rawLength];
+    }
+
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(pos + LogRecord.HEADER_SIZE + LogRecord.BLOCK_HEADER_SIZE);
+    dup.get(_input, 0, dataLength);
+
+    try {
+      _inflater.reset();
+      _inflater.setInput(_input, 0, dataLength);
+
+      int length = 0;
+
+      while (length < rawLength && ! _inflater.finished()) {
+        length += _inflater.inflate(_raw, length, rawLength - length);
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IOException(e);
+    }
+
+    ByteBuffer raw = ByteBuffer.wrap(_raw, 0, rawLength);
+
+    int rawPos = 0;
+    int size;
+
+    while ((size = LogRecord.check(raw, rawPos, _crc)) > 0) {
+      if (! visitor.visit(offset, nextOffset, raw, rawPos)) {
+        return false;
+      }
+
+      rawPos += size;
+    }
+
+    return true;
+  }
+
+  public interface RecordVisitor
+  {
+    /**
+     * Called with the record at <code>pos</code> in the buffer.
+     */
+    boolean visit(long offset, long nextOffset, ByteBuffer buffer, int pos);
+  }
+}
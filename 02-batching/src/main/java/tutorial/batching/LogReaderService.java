@@ -0,0 +1,14 @@
+package tutorial.batching;
+
+import io.baratine.core.ResultStream;
+
+public interface LogReaderService
+{
+  void read(long offset, ResultStream<String> result);
+
+  void readEntries(long offset, ResultStream<LogEntry> result);
+
+  void readFrom(long sequence, ResultStream<LogEntry> result);
+
+  void readBetween(long startTime, long endTime, ResultStream<LogEntry> result);
+}
@@ -0,0 +1,91 @@
+package tutorial.batching;
+
+import io.baratine.core.ResultStream;
+import io.baratine.core.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Reads the log on its own inbox, so a long scan never holds up the
+ * {@code log()} calls queued on the writer's.
+ */
+@Service("public:///log-reader")
+public class LogReaderServiceImpl
+{
+  private final Path _dir;
+  private final LogReader _reader;
+
+  public LogReaderServiceImpl()
+  {
+    this(new LogConfig());
+  }
+
+  public LogReaderServiceImpl(LogConfig config)
+  {
+    _dir = Paths.get(config.getDirectory());
+    _reader = new LogReader(_dir);
+  }
+
+  public void read(long offset, ResultStream<String> result)
+    throws IOException
+  {
+    _reader.scan(offset, (recordOffset, nextOffset, buffer, pos) -> {
+      result.accept(LogRecord.getMessage(buffer, pos));
+
+      return true;
+    });
+
+    result.complete();
+  }
+
+  public void readEntries(long offset, ResultStream<LogEntry> result)
+    throws IOException
+  {
+    _reader.scan(offset, (recordOffset, nextOffset, buffer, pos) -> {
+      result.accept(LogRecord.getEntry(recordOffset, nextOffset, buffer, pos));
+
+      return true;
+    });
+
+    result.complete();
+  }
+
+  public void readFrom(long sequence, ResultStream<LogEntry> result)
+    throws IOException
+  {
+    long offset = LogIndex.findSequence(_dir, sequence);
+
+    _reader.scan(offset, (recordOffset, nextOffset, buffer, pos) -> {
+      if (sequence <= LogRecord.getSequence(buffer, pos)) {
+        result.accept(LogRecord.getEntry(recordOffset, nextOffset, buffer, pos));
+      }
+
+      return true;
+    });
+
+    result.complete();
+  }
+
+  public void readBetween(long startTime, long endTime, ResultStream<LogEntry> result)
+    throws IOException
+  {
+    long offset = LogIndex.findTimestamp(_dir, startTime);
+
+    _reader.scan(offset, (recordOffset, nextOffset, buffer, pos) -> {
+      long timestamp = LogRecord.getTimestamp(buffer, pos);
+
+      if (endTime < timestamp) {
+        return false;
+      }
+      else if (startTime <= timestamp) {
+        result.accept(LogRecord.getEntry(recordOffset, nextOffset, buffer, pos));
+      }
+
+      return true;
+    });
+
+    result.complete();
+  }
+}
@@ -0,0 +1,249 @@
+package tutorial.batching;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary framing of a log record:
+ *
+ * <pre>
+ *   int  length      payload length in bytes
+ *   long sequence    starts at 1, so a zero header marks the end of the data
+ *   long timestamp   milliseconds
+ *   int  crc         CRC-32C of the header fields and the payload
+ *   byte payload[length]
+ * </pre>
+ *
+ * The CRC is written last, so a torn write is detected by a mismatch.
+ *
+ * In compressed mode, a whole batch of records is written as one block.  A
+ * block has the same header with <code>BLOCK_FLAG</code> set in the length,
+ * the sequence and timestamp of its first record, and a payload of:
+ *
+ * <pre>
+ *   int  rawLength   length of the uncompressed records
+ *   int  count       number of records in the block
+ *   byte data[]      the deflated records
+ * </pre>
+ */
+public class LogRecord
+{
+  public static final int HEADER_SIZE = 24;
+  public static final int BLOCK_HEADER_SIZE = 8;
+
+  public static final int BLOCK_FLAG = 0x80000000;
+
+  private static final int OFFSET_LENGTH = 0;
+  private static final int OFFSET_SEQUENCE = 4;
+  private static final int OFFSET_TIMESTAMP = 12;
+  private static final int OFFSET_CRC = 20;
+
+  private LogRecord()
+  {
+  }
+
+  /**
+   * Returns the most bytes a message can take when encoded as a record.
+   */
+  public static int getMaxLength(CharSequence msg)
+  {
+    // UTF-8 takes at most three bytes per UTF-16 char
+    return HEADER_SIZE + 3 * msg.length();
+  }
+
+  /**
+   * Writes the message as a record, encoding it straight into the buffer
+   * without allocating.  The buffer must have room for
+   * <code>getMaxLength(msg)</code> bytes.
+   */
+  public static void write(ByteBuffer buffer,
+                           long sequence,
+                           long timestamp,
+                           CharSequence msg,
+                           Crc32c crc)
+  {
+    int pos = buffer.position();
+
+    buffer.putInt(0);
+    buffer.putLong(sequence);
+    buffer.putLong(timestamp);
+    buffer.putInt(0);
+
+    encode(buffer, msg);
+
+    int length = buffer.position() - pos - HEADER_SIZE;
+
+    buffer.putInt(pos + OFFSET_LENGTH, length);
+    buffer.putInt(pos + OFFSET_CRC, checksum(buffer, pos, length, crc));
+  }
+
+  private static void encode(ByteBuffer buffer, CharSequence msg)
+  {
+    int length = msg.length();
+    int i = 0;
+
+    // ASCII fast path
+    for (; i < length; i++) {
+      char ch = msg.charAt(i);
+
+      if (ch >= 0x80) {
+        break;
+      }
+
+      buffer.put((byte) ch);
+    }
+
+    for (; i < length; i++) {
+      char ch = msg.charAt(i);
+
+      if (ch < 0x80) {
+        buffer.put((byte) ch);
+      }
+      else if (ch < 0x800) {
+        buffer.put((byte) (0xc0 | (ch >> 6)));
+        buffer.put((byte) (0x80 | (ch & 0x3f)));
+      }
+      else if (Character.isHighSurrogate(ch)
+               && i + 1 < length
+               && Character.isLowSurrogate(msg.charAt(i + 1))) {
+        int cp = Character.toCodePoint(ch, msg.charAt(++i));
+
+        buffer.put((byte) (0xf0 | (cp >> 18)));
+        buffer.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+        buffer.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+        buffer.put((byte) (0x80 | (cp & 0x3f)));
+      }
+      else if (Character.isSurrogate(ch)) {
+        // unpaired surrogate, replaced as String.getBytes() does
+        buffer.put((byte) '?');
+      }
+      else {
+        buffer.put((byte) (0xe0 | (ch >> 12)));
+        buffer.put((byte) (0x80 | ((ch >> 6) & 0x3f)));
+        buffer.put((byte) (0x80 | (ch & 0x3f)));
+      }
+    }
+  }
+
+  public static void writeBlock(ByteBuffer buffer,
+                                long sequence,
+                                long timestamp,
+                                int count,
+                                int rawLength,
+                                byte []data,
+                                int dataLength,
+                                Crc32c crc)
+  {
+    int pos = buffer.position();
+    int length = BLOCK_HEADER_SIZE + dataLength;
+
+    buffer.putInt(length | BLOCK_FLAG);
+    buffer.putLong(sequence);
+    buffer.putLong(timestamp);
+    buffer.putInt(0);
+    buffer.putInt(rawLength);
+    buffer.putInt(count);
+    buffer.put(data, 0, dataLength);
+
+    buffer.putInt(pos + OFFSET_CRC, checksum(buffer, pos, length, crc));
+  }
+
+  /**
+   * Returns the size of the valid record at <code>pos</code>, or -1 at the end
+   * of the data or at a torn record.
+   */
+  public static int check(ByteBuffer buffer, int pos, Crc32c crc)
+  {
+    if (buffer.limit() - pos < HEADER_SIZE) {
+      return -1;
+    }
+
+    int length = getLength(buffer, pos);
+
+    if (getSequence(buffer, pos) == 0
+        || buffer.limit() - pos - HEADER_SIZE < length) {
+      return -1;
+    }
+
+    if (buffer.getInt(pos + OFFSET_CRC) != checksum(buffer, pos, length, crc)) {
+      return -1;
+    }
+
+    return HEADER_SIZE + length;
+  }
+
+  private static int checksum(ByteBuffer buffer, int pos, int length, Crc32c crc)
+  {
+    crc.reset();
+    crc.update(buffer, pos, OFFSET_CRC);
+    crc.update(buffer, pos + HEADER_SIZE, length);
+
+    return (int) crc.getValue();
+  }
+
+  public static int getLength(ByteBuffer buffer, int pos)
+  {
+    return buffer.getInt(pos + OFFSET_LENGTH) & ~BLOCK_FLAG;
+  }
+
+  public static boolean isBlock(ByteBuffer buffer, int pos)
+  {
+    return (buffer.getInt(pos + OFFSET_LENGTH) & BLOCK_FLAG) != 0;
+  }
+
+  public static int getBlockRawLength(ByteBuffer buffer, int pos)
+  {
+    return buffer.getInt(pos + HEADER_SIZE);
+  }
+
+  public static int getBlockCount(ByteBuffer buffer, int pos)
+  {
+    return buffer.getInt(pos + HEADER_SIZE + 4);
+  }
+
+  /**
+   * Sequence of the record, or of the last record in a block.
+   */
+  public static long getLastSequence(ByteBuffer buffer, int pos)
+  {
+    if (isBlock(buffer, pos)) {
+      return getSequence(buffer, pos) + getBlockCount(buffer, pos) - 1;
+    }
+    else {
+      return getSequence(buffer, pos);
+    }
+  }
+
+  public static long getSequence(ByteBuffer buffer, int pos)
+  {
+    return buffer.getLong(pos + OFFSET_SEQUENCE);
+  }
+
+  public static long getTimestamp(ByteBuffer buffer, int pos)
+  {
+    return buffer.getLong(pos + OFFSET_TIMESTAMP);
+  }
+
+  public static LogEntry getEntry(long offset,
+                                  long nextOffset,
+                                  ByteBuffer buffer,
+                                  int pos)
+  {
+    return new LogEntry(offset,
+                        nextOffset,
+                        getSequence(buffer, pos),
+                        getTimestamp(buffer, pos),
+                        getMessage(buffer, pos));
+  }
+
+  public static String getMessage(ByteBuffer buffer, int pos)
+  {
+    byte []bytes = new byte[getLength(buffer, pos)];
+
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(pos + HEADER_SIZE);
+    dup.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,285 @@
+package tutorial.batching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * A fixed-size, preallocated log file that is memory-mapped for appends.
+ * The segment's name is the log offset of its first byte.
+ */
+public class LogSegment
+{
+  private static final String SUFFIX = ".log";
+  private static final String INDEX_SUFFIX = ".index";
+
+  private final Path _path;
+  private final long _baseOffset;
+
+  private final long _capacity;
+
+  private long _lastSequence;
+
+  private FileChannel _channel;
+  private MappedByteBuffer _buffer;
+
+  private LogSegment(Path path, long baseOffset, FileChannel channel, int size)
+    throws IOException
+  {
+    _path = path;
+    _baseOffset = baseOffset;
+    _channel = channel;
+    _capacity = size;
+
+    // mapping past the end of the file extends and preallocates it
+    _buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+
+  private LogSegment(Path path, long capacity)
+  {
+    _path = path;
+    _baseOffset = toBaseOffset(path);
+    _capacity = capacity;
+  }
+
+  public static LogSegment create(Path dir, long baseOffset, int size)
+    throws IOException
+  {
+    Path path = dir.resolve(toName(baseOffset));
+
+    FileChannel channel = FileChannel.open(path,
+                                           StandardOpenOption.CREATE_NEW,
+                                           StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE);
+
+    return new LogSegment(path, baseOffset, channel, size);
+  }
+
+  public static LogSegment open(Path path, int size)
+    throws IOException
+  {
+    FileChannel channel = FileChannel.open(path,
+                                           StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE);
+
+    size = (int) Math.max(size, channel.size());
+
+    LogSegment segment = new LogSegment(path, toBaseOffset(path), channel, size);
+
+    segment.recover();
+
+    return segment;
+  }
+
+  /**
+   * Opens a full segment for retention bookkeeping only, without mapping it.
+   */
+  public static LogSegment openSealed(Path path)
+    throws IOException
+  {
+    return new LogSegment(path, Files.size(path));
+  }
+
+  private void recover()
+  {
+    Crc32c crc = new Crc32c();
+
+    int pos = 0;
+    int size;
+
+    while ((size = LogRecord.check(_buffer, pos, crc)) > 0) {
+      _lastSequence = LogRecord.getLastSequence(_buffer, pos);
+
+      pos += size;
+    }
+
+    // zero any torn record, so it can't be mistaken for data after new appends
+    int end = _buffer.capacity();
+
+    while (end > pos && _buffer.get(end - 1) == 0) {
+      end--;
+    }
+
+    for (int i = pos; i < end; i++) {
+      _buffer.put(i, (byte) 0);
+    }
+
+    _buffer.position(pos);
+  }
+
+  /**
+   * Sequence of the last valid record found when the segment was opened.
+   */
+  public long getLastSequence()
+  {
+    return _lastSequence;
+  }
+
+  /**
+   * Scans a sealed segment for the sequence of its last record.
+   */
+  public static long scanLastSequence(Path path)
+    throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      Crc32c crc = new Crc32c();
+
+      long sequence = 0;
+      int pos = 0;
+      int size;
+
+      while ((size = LogRecord.check(buffer, pos, crc)) > 0) {
+        sequence = LogRecord.getLastSequence(buffer, pos);
+
+        pos += size;
+      }
+
+      return sequence;
+    }
+  }
+
+  /**
+   * Returns the segment files in the directory, ordered by base offset.
+   */
+  public static ArrayList<Path> list(Path dir)
+    throws IOException
+  {
+    ArrayList<Path> paths = new ArrayList<>();
+
+    if (! Files.isDirectory(dir)) {
+      return paths;
+    }
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path path : stream) {
+        if (isSegment(path)) {
+          paths.add(path);
+        }
+      }
+    }
+
+    Collections.sort(paths, Comparator.comparingLong(LogSegment::toBaseOffset));
+
+    return paths;
+  }
+
+  public static boolean isSegment(Path path)
+  {
+    return path.getFileName().toString().endsWith(SUFFIX);
+  }
+
+  public static String toName(long baseOffset)
+  {
+    return String.format("%020d%s", baseOffset, SUFFIX);
+  }
+
+  public static long toBaseOffset(Path path)
+  {
+    String name = path.getFileName().toString();
+
+    return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+  }
+
+  public static Path toIndexPath(Path path)
+  {
+    String name = path.getFileName().toString();
+
+    return path.resolveSibling(name.substring(0, name.length() - SUFFIX.length())
+                               + INDEX_SUFFIX);
+  }
+
+  public Path getPath()
+  {
+    return _path;
+  }
+
+  public Path getIndexPath()
+  {
+    return toIndexPath(_path);
+  }
+
+  public long getBaseOffset()
+  {
+    return _baseOffset;
+  }
+
+  /**
+   * Log offset just past the last appended byte.
+   */
+  public long getEndOffset()
+  {
+    return _baseOffset + _buffer.position();
+  }
+
+  public long getCapacity()
+  {
+    return _capacity;
+  }
+
+  public int remaining()
+  {
+    return _buffer.remaining();
+  }
+
+  /**
+   * Returns the mapping positioned at the end of the data, so appends are
+   * plain memory copies.
+   */
+  public MappedByteBuffer buffer()
+  {
+    return _buffer;
+  }
+
+  public void force()
+  {
+    _buffer.force();
+  }
+
+  public void seal()
+    throws IOException
+  {
+    Files.setLastModifiedTime(_path, FileTime.fromMillis(System.currentTimeMillis()));
+  }
+
+  public long getLastModified()
+    throws IOException
+  {
+    return Files.getLastModifiedTime(_path).toMillis();
+  }
+
+  public void close()
+    throws IOException
+  {
+    if (_channel != null) {
+      _channel.close();
+      _channel = null;
+    }
+
+    _buffer = null;
+  }
+
+  public void delete()
+    throws IOException
+  {
+    close();
+
+    Files.deleteIfExists(_path);
+    Files.deleteIfExists(getIndexPath());
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _path + "]";
+  }
+}
@@ -0,0 +1,222 @@
+package tutorial.batching;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The log as a directory of segments: appends go to the active segment,
+ * which is rolled over when full, and old segments are deleted by the
+ * configured size and age retention.
+ */
+public class LogSegments
+{
+  private static final Logger log = Logger.getLogger(LogSegments.class.getName());
+
+  private final LogConfig _config;
+  private final Path _dir;
+
+  private final ArrayDeque<LogSegment> _segments = new ArrayDeque<>();
+  private final ArrayList<LogSegment> _unforced = new ArrayList<>();
+
+  private final LogIndex _index;
+
+  private LogSegment _active;
+  private long _sequence;
+
+  public LogSegments(LogConfig config)
+  {
+    _config = config;
+    _dir = Paths.get(config.getDirectory());
+    _index = new LogIndex(config);
+  }
+
+  public void open()
+    throws IOException
+  {
+    Files.createDirectories(_dir);
+
+    ArrayList<Path> paths = LogSegment.list(_dir);
+
+    for (int i = 0; i < paths.size(); i++) {
+      if (i < paths.size() - 1) {
+        _segments.add(LogSegment.openSealed(paths.get(i)));
+      }
+      else {
+        _active = LogSegment.open(paths.get(i), _config.getSegmentSize());
+        _segments.add(_active);
+      }
+    }
+
+    if (_active == null) {
+      _active = LogSegment.create(_dir, 0, _config.getSegmentSize());
+      _segments.add(_active);
+    }
+
+    _index.open(_active);
+
+    _sequence = _active.getLastSequence();
+
+    if (_sequence == 0 && paths.size() > 1) {
+      // the active segment was empty, so the last record is in the one before
+      _sequence = LogSegment.scanLastSequence(paths.get(paths.size() - 2));
+    }
+
+    applyRetention();
+  }
+
+  public Path getDirectory()
+  {
+    return _dir;
+  }
+
+  /**
+   * Returns the active mapping with at least <code>length</code> bytes of
+   * room, rolling over to a new segment if necessary.
+   */
+  public MappedByteBuffer reserve(int length)
+    throws IOException
+  {
+    if (_active.remaining() < length) {
+      roll(length);
+    }
+
+    markUnforced(_active);
+
+    return _active.buffer();
+  }
+
+  public long getEndOffset()
+  {
+    return _active.getEndOffset();
+  }
+
+  /**
+   * Sequence of the last record recovered when the log was opened.
+   */
+  public long getLastSequence()
+  {
+    return _sequence;
+  }
+
+  /**
+   * Adds the record just written at <code>offset</code> to the sparse index.
+   */
+  public void index(long sequence, long timestamp, long offset)
+    throws IOException
+  {
+    _index.add(sequence, timestamp, offset);
+  }
+
+  private void roll(int length)
+    throws IOException
+  {
+    LogSegment prev = _active;
+
+    prev.seal();
+
+    int size = Math.max(_config.getSegmentSize(), length);
+
+    _active = LogSegment.create(_dir, prev.getEndOffset(), size);
+    _segments.add(_active);
+
+    _index.open(_active);
+
+    applyRetention();
+  }
+
+  private void markUnforced(LogSegment segment)
+  {
+    if (_unforced.isEmpty() || _unforced.get(_unforced.size() - 1) != segment) {
+      _unforced.add(segment);
+    }
+  }
+
+  /**
+   * Completes the writes since the last flush, forcing them to disk when
+   * <code>isForce</code> is set.
+   */
+  public void flush(boolean isForce)
+    throws IOException
+  {
+    _index.flush();
+
+    for (LogSegment segment : _unforced) {
+      if (isForce) {
+        segment.force();
+      }
+
+      if (segment != _active) {
+        // a sealed segment no longer needs its mapping
+        segment.close();
+      }
+    }
+
+    _unforced.clear();
+  }
+
+  private void applyRetention()
+    throws IOException
+  {
+    long now = System.currentTimeMillis();
+    long totalSize = 0;
+
+    for (LogSegment segment : _segments) {
+      totalSize += segment.getCapacity();
+    }
+
+    while (_segments.size() > 1) {
+      LogSegment oldest = _segments.peekFirst();
+
+      boolean isOverSize = totalSize > _config.getRetentionBytes();
+      boolean isExpired = now - oldest.getLastModified() > _config.getRetentionAge();
+
+      if (! isOverSize && ! isExpired) {
+        break;
+      }
+
+      if (_unforced.contains(oldest)) {
+        // don't lose the durability of a segment that is still pending a force
+        oldest.force();
+        _unforced.remove(oldest);
+      }
+
+      _segments.pollFirst();
+      totalSize -= oldest.getCapacity();
+
+      oldest.delete();
+    }
+  }
+
+  public void close()
+    throws IOException
+  {
+    try {
+      flush(true);
+    }
+    finally {
+      try {
+        _index.close();
+      }
+      finally {
+        for (LogSegment segment : _segments) {
+          try {
+            segment.close();
+          }
+          catch (IOException e) {
+            log.log(Level.WARNING, e.toString(), e);
+          }
+        }
+
+        _segments.clear();
+        _active = null;
+      }
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package tutorial.batching;
 
+import java.util.List;
+
 import io.baratine.core.Result;
 
 public interface LogService
@@ -7,4 +9,8 @@ public interface LogService
   void log(String msg, Result<Void> result);
 
   void log(String msg);
+
+  void logAll(List<String> msgs, Result<Void> result);
+
+  void logAll(List<String> msgs);
 }
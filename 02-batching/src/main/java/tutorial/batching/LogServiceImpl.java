@@ -7,29 +7,79 @@ import io.baratine.core.OnInit;
 import io.baratine.core.Result;
 import io.baratine.core.Service;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.util.List;
 
 @Service("public:///log")
 public class LogServiceImpl
 {
-  private PrintStream _out;
+  private final LogConfig _config;
+  private final Crc32c _crc = new Crc32c();
+
+  private LogWriter _writer;
+
+  private LogBatch _batch;
+  private LogStats _stats;
+
+  private long _sequence;
+  private long _lastTimestamp;
+
+  public LogServiceImpl()
+  {
+    this(new LogConfig());
+  }
+
+  public LogServiceImpl(LogConfig config)
+  {
+    _config = config;
+  }
 
   public void log(String msg, Result<Void> result)
   {
-    _out.println(msg);
+    append(msg);
 
-    result.complete(null);
+    complete(result);
+  }
+
+  public void logAll(List<String> msgs, Result<Void> result)
+  {
+    for (String msg : msgs) {
+      append(msg);
+    }
+
+    complete(result);
+  }
+
+  private void append(String msg)
+  {
+    // the index's timestamp search relies on timestamps never going backward
+    long timestamp = Math.max(System.currentTimeMillis(), _lastTimestamp);
+    _lastTimestamp = timestamp;
+
+    _batch.append(++_sequence, timestamp, msg, _crc);
+  }
+
+  private void complete(Result<Void> result)
+  {
+    // completed by the writer once the batch is in the log, and forced to
+    // disk in durable mode
+    _batch.addResult(result);
   }
 
   @OnInit
   public void onInit(Result<Void> result)
   {
     try {
-      boolean isAutoFlush = false;
+      LogSegments segments = new LogSegments(_config);
+      segments.open();
 
-      _out = new PrintStream(new FileOutputStream("/tmp/tutorial_log.txt", true), isAutoFlush);
+      _sequence = segments.getLastSequence();
+
+      _writer = new LogWriter(_config, segments);
+      _writer.start();
+
+      _batch = new LogBatch();
+      _stats = LogStats.get(_config.getDirectory());
 
       result.complete(null);
     }
@@ -48,15 +98,31 @@ public class LogServiceImpl
 
   @AfterBatch
   public void afterBatch()
+    throws IOException
   {
-    _out.flush();
+    if (! _batch.isEmpty()) {
+      _stats.getBatchSize().record(_batch.getCount());
+
+      // the I/O thread writes this batch while the next one fills
+      _batch = _writer.write(_batch);
+    }
   }
 
   @OnDestroy
   public void onShutdown(Result<Void> result)
+    throws IOException
   {
-    _out.close();
-    _out = null;
+    LogWriter writer = _writer;
+    LogBatch batch = _batch;
+
+    _writer = null;
+    _batch = null;
+
+    // close() stops the I/O thread and unmaps the segments even if the
+    // last write fails
+    if (writer != null) {
+      writer.close(batch);
+    }
 
     result.complete(null);
   }
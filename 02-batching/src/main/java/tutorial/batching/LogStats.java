@@ -0,0 +1,64 @@
+package tutorial.batching;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Batch-level metrics for a log, registered by the log's directory so the
+ * stats service can find them.  The batch size is recorded by the service
+ * thread; bytes and latencies by the writer's I/O thread.
+ */
+public class LogStats
+{
+  private static final ConcurrentHashMap<String,LogStats> _statsMap
+    = new ConcurrentHashMap<>();
+
+  private final Histogram _batchSize = new Histogram();
+  private final Histogram _batchBytes = new Histogram();
+  private final Histogram _flushMicros = new Histogram();
+  private final Histogram _fsyncMicros = new Histogram();
+
+  public static LogStats get(String directory)
+  {
+    return _statsMap.computeIfAbsent(directory, dir -> new LogStats());
+  }
+
+  /**
+   * Number of records in a batch.
+   */
+  public Histogram getBatchSize()
+  {
+    return _batchSize;
+  }
+
+  /**
+   * Bytes a batch added to the log, after compression.
+   */
+  public Histogram getBatchBytes()
+  {
+    return _batchBytes;
+  }
+
+  /**
+   * Time to write a batch to the segments, including any fsync.
+   */
+  public Histogram getFlushMicros()
+  {
+    return _flushMicros;
+  }
+
+  /**
+   * Time of the fsync alone, recorded only in durable mode.
+   */
+  public Histogram getFsyncMicros()
+  {
+    return _fsyncMicros;
+  }
+
+  public LogStatsSnapshot snapshot()
+  {
+    return new LogStatsSnapshot(_batchSize.snapshot(),
+                                _batchBytes.snapshot(),
+                                _flushMicros.snapshot(),
+                                _fsyncMicros.snapshot());
+  }
+}
@@ -0,0 +1,8 @@
+package tutorial.batching;
+
+import io.baratine.core.Result;
+
+public interface LogStatsService
+{
+  void getStats(Result<LogStatsSnapshot> result);
+}
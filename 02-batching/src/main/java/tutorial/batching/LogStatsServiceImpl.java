@@ -0,0 +1,25 @@
+package tutorial.batching;
+
+import io.baratine.core.Result;
+import io.baratine.core.Service;
+
+@Service("public:///log-stats")
+public class LogStatsServiceImpl
+{
+  private final LogStats _stats;
+
+  public LogStatsServiceImpl()
+  {
+    this(new LogConfig());
+  }
+
+  public LogStatsServiceImpl(LogConfig config)
+  {
+    _stats = LogStats.get(config.getDirectory());
+  }
+
+  public void getStats(Result<LogStatsSnapshot> result)
+  {
+    result.complete(_stats.snapshot());
+  }
+}
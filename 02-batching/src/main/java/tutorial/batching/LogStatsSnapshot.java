@@ -0,0 +1,54 @@
+package tutorial.batching;
+
+public class LogStatsSnapshot
+{
+  private HistogramSnapshot _batchSize;
+  private HistogramSnapshot _batchBytes;
+  private HistogramSnapshot _flushMicros;
+  private HistogramSnapshot _fsyncMicros;
+
+  public LogStatsSnapshot()
+  {
+  }
+
+  public LogStatsSnapshot(HistogramSnapshot batchSize,
+                          HistogramSnapshot batchBytes,
+                          HistogramSnapshot flushMicros,
+                          HistogramSnapshot fsyncMicros)
+  {
+    _batchSize = batchSize;
+    _batchBytes = batchBytes;
+    _flushMicros = flushMicros;
+    _fsyncMicros = fsyncMicros;
+  }
+
+  public HistogramSnapshot getBatchSize()
+  {
+    return _batchSize;
+  }
+
+  public HistogramSnapshot getBatchBytes()
+  {
+    return _batchBytes;
+  }
+
+  public HistogramSnapshot getFlushMicros()
+  {
+    return _flushMicros;
+  }
+
+  public HistogramSnapshot getFsyncMicros()
+  {
+    return _fsyncMicros;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName()
+           + "[batchSize=" + _batchSize
+           + ",batchBytes=" + _batchBytes
+           + ",flushMicros=" + _flushMicros
+           + ",fsyncMicros=" + _fsyncMicros + "]";
+  }
+}
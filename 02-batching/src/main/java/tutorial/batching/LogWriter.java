@@ -0,0 +1,245 @@
+package tutorial.batching;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Double-buffered writer.  The service thread fills one batch while a
+ * dedicated I/O thread copies the other into the segments, forces it when
+ * durable, and completes its results.  With only two batches, the service
+ * thread blocks in <code>write()</code> when both are busy.
+ */
+public class LogWriter implements Runnable
+{
+  private static final Logger log = Logger.getLogger(LogWriter.class.getName());
+
+  private static final LogBatch CLOSE = new LogBatch();
+
+  private final LogConfig _config;
+  private final LogSegments _segments;
+  private final LogCompressor _compressor;
+  private final LogStats _stats;
+
+  private final Crc32c _crc = new Crc32c();
+
+  private final ArrayBlockingQueue<LogBatch> _writeQueue = new ArrayBlockingQueue<>(1);
+  private final ArrayBlockingQueue<LogBatch> _freeQueue = new ArrayBlockingQueue<>(1);
+
+  private Thread _thread;
+
+  public LogWriter(LogConfig config, LogSegments segments)
+  {
+    _config = config;
+    _segments = segments;
+
+    if (config.isCompressed()) {
+      _compressor = new LogCompressor(config.getCompressionLevel());
+    }
+    else {
+      _compressor = null;
+    }
+
+    _stats = LogStats.get(config.getDirectory());
+
+    _freeQueue.add(new LogBatch());
+  }
+
+  public void start()
+  {
+    // a daemon, so a writer that is never closed can't keep the JVM alive
+    _thread = new Thread(this, getClass().getSimpleName());
+    _thread.setDaemon(true);
+    _thread.start();
+  }
+
+  /**
+   * Hands a filled batch to the I/O thread and returns an empty one to fill.
+   */
+  public LogBatch write(LogBatch batch)
+    throws IOException
+  {
+    try {
+      _writeQueue.put(batch);
+
+      return _freeQueue.take();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException();
+    }
+  }
+
+  @Override
+  public void run()
+  {
+    try {
+      LogBatch batch;
+
+      while ((batch = _writeQueue.take()) != CLOSE) {
+        try {
+          writeBatch(batch);
+        }
+        finally {
+          // the service thread is waiting in write() for this buffer
+          batch.clear();
+          _freeQueue.put(batch);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeBatch(LogBatch batch)
+  {
+    Throwable exn = null;
+
+    try {
+      long startTime = System.nanoTime();
+      long startOffset = _segments.getEndOffset();
+
+      if (batch.getCount() > 0) {
+        writeRecords(batch);
+      }
+
+      long fsyncTime = System.nanoTime();
+
+      // one fsync for the whole batch instead of one per message
+      _segments.flush(_config.isDurable());
+
+      long endTime = System.nanoTime();
+
+      if (_config.isDurable()) {
+        _stats.getFsyncMicros().record((endTime - fsyncTime) / 1000);
+      }
+
+      _stats.getFlushMicros().record((endTime - startTime) / 1000);
+      _stats.getBatchBytes().record(_segments.getEndOffset() - startOffset);
+    }
+    catch (Throwable e) {
+      exn = e;
+    }
+
+    try {
+      batch.complete(exn);
+    }
+    catch (Throwable e) {
+      log.log(Level.WARNING, e.toString(), e);
+    }
+  }
+
+  private void writeRecords(LogBatch batch)
+    throws IOException
+  {
+    if (_compressor != null) {
+      _compressor.writeBlock(batch, _segments, _crc);
+    }
+    else {
+      copyRecords(batch);
+    }
+  }
+
+  private void copyRecords(LogBatch batch)
+    throws IOException
+  {
+    ByteBuffer records = batch.getRecords();
+    int end = records.position();
+    int pos = 0;
+
+    while (pos < end) {
+      int length = LogRecord.HEADER_SIZE + LogRecord.getLength(records, pos);
+
+      ByteBuffer buffer = _segments.reserve(length);
+      long offset = _segments.getEndOffset();
+
+      buffer.put(records.array(), pos, length);
+
+      _segments.index(LogRecord.getSequence(records, pos),
+                      LogRecord.getTimestamp(records, pos),
+                      offset);
+
+      pos += length;
+    }
+  }
+
+  /**
+   * Writes the last batch, then stops the I/O thread and closes the segments.
+   * The thread is stopped and the segments are closed even if the last write
+   * fails or the caller is interrupted.
+   */
+  public void close(LogBatch batch)
+    throws IOException
+  {
+    try {
+      if (batch != null && ! batch.isEmpty()) {
+        write(batch);
+      }
+    }
+    finally {
+      try {
+        stop();
+      }
+      finally {
+        try {
+          if (_compressor != null) {
+            _compressor.close();
+          }
+        }
+        finally {
+          _segments.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for the I/O thread to write the queued batches and exit.  An
+   * interrupt doesn't cut the wait short, because the segments must not be
+   * closed under the thread; it is restored once the thread is gone.
+   */
+  private void stop()
+  {
+    Thread thread = _thread;
+    _thread = null;
+
+    if (thread == null) {
+      return;
+    }
+
+    boolean isInterrupted = false;
+    boolean isClosing = false;
+
+    while (thread.isAlive()) {
+      try {
+        if (! isClosing) {
+          // a thread that already exited would never take the sentinel
+          isClosing = _writeQueue.offer(CLOSE, 100, TimeUnit.MILLISECONDS);
+        }
+        else {
+          thread.join();
+        }
+      }
+      catch (InterruptedException e) {
+        isInterrupted = true;
+      }
+    }
+
+    // only left behind if the thread exited early
+    LogBatch batch = _writeQueue.poll();
+
+    if (batch != null && batch != CLOSE) {
+      batch.complete(new IOException("log writer stopped before writing the batch"));
+    }
+
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -1,15 +1,24 @@
 package tutorial.batching;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.nio.file.FileSystems;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
 import io.baratine.core.Lookup;
 import io.baratine.core.ResultFuture;
+import io.baratine.core.ResultStream;
+import io.baratine.core.Service;
 import io.baratine.core.ServiceRef;
 
 import org.junit.AfterClass;
@@ -23,17 +32,51 @@ import com.caucho.junit.ConfigurationBaratine;
 import com.caucho.junit.RunnerBaratine;
 
 @RunWith(RunnerBaratine.class)
-@ConfigurationBaratine(services = {LogServiceImpl.class}, pod = "pod",
+@ConfigurationBaratine(services = {LogServiceImpl.class,
+                                  LogServiceTest.CompressedLogServiceImpl.class,
+                                  LogServiceTest.DurableLogServiceImpl.class,
+                                  LogServiceTest.SegmentedLogServiceImpl.class,
+                                  LogServiceTest.SegmentedLogReaderServiceImpl.class,
+                                  LogReaderServiceImpl.class,
+                                  LogServiceTest.CompressedLogReaderServiceImpl.class,
+                                  LogStatsServiceImpl.class},
+  pod = "pod",
   logs = {@ConfigurationBaratine.Log(name = "com.caucho", level = "WARNING"),
           @ConfigurationBaratine.Log(name = "tutorial", level = "FINER")})
 public class LogServiceTest
 {
+  private static final Path LOG_DIR = Paths.get(new LogConfig().getDirectory());
+  private static final Path COMPRESSED_DIR = Paths.get("/tmp/tutorial_log_compressed");
+  private static final Path DURABLE_DIR = Paths.get("/tmp/tutorial_log_durable");
+  private static final Path SEGMENTED_DIR = Paths.get("/tmp/tutorial_log_segmented");
+
   @Inject @Lookup("public:///log")
   private ServiceRef _serviceRef;
 
   @Inject @Lookup("public:///log")
   private LogService _service;
 
+  @Inject @Lookup("public:///log-compressed")
+  private LogService _compressed;
+
+  @Inject @Lookup("public:///log-durable")
+  private LogService _durable;
+
+  @Inject @Lookup("public:///log-segmented")
+  private LogService _segmented;
+
+  @Inject @Lookup("public:///log-segmented-reader")
+  private LogReaderService _segmentedReader;
+
+  @Inject @Lookup("public:///log-reader")
+  private LogReaderService _reader;
+
+  @Inject @Lookup("public:///log-compressed-reader")
+  private LogReaderService _compressedReader;
+
+  @Inject @Lookup("public:///log-stats")
+  private LogStatsService _stats;
+
   @Inject
   private RunnerBaratine _testContext;
 
@@ -42,8 +85,24 @@ public class LogServiceTest
   public static void cleanupStatic()
     throws Exception
   {
-    Path path = FileSystems.getDefault().getPath("/tmp/tutorial_log.txt");
-    Files.deleteIfExists(path);
+    delete(LOG_DIR);
+    delete(COMPRESSED_DIR);
+    delete(DURABLE_DIR);
+    delete(SEGMENTED_DIR);
+  }
+
+  private static void delete(Path dir)
+    throws IOException
+  {
+    if (Files.exists(dir)) {
+      try (Stream<Path> stream = Files.list(dir)) {
+        for (Path path : stream.collect(Collectors.toList())) {
+          Files.delete(path);
+        }
+      }
+
+      Files.delete(dir);
+    }
   }
 
   @Before
@@ -68,13 +127,120 @@ public class LogServiceTest
     _service.log("ccc", future);
     future.get();
 
-    try (BufferedReader reader = new BufferedReader(new FileReader("/tmp/tutorial_log.txt"))) {
-      Assert.assertEquals("aaa", reader.readLine());
-      Assert.assertEquals("bbb", reader.readLine());
-      Assert.assertEquals("ccc", reader.readLine());
+    Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc"), readLog());
+  }
+
+  @Test
+  public void testLogAll()
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    _service.log("aaa");
+    _service.logAll(Arrays.asList("bbb", "ccc", "ddd"), future);
+    future.get();
+
+    Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc", "ddd"), readLog());
+  }
+
+  @Test
+  public void testCoalescer()
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    try (LogCoalescer logger = new LogCoalescer(_service, 3, 1000)) {
+      logger.log("aaa");
+      logger.log("bbb");
+      logger.log("ccc", future);
+
+      future.get();
+
+      Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc"), readLog());
+    }
+  }
+
+  @Test
+  public void testReader()
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    _service.log("aaa");
+    _service.log("bbb");
+    _service.log("ccc", future);
+    future.get();
+
+    StreamFuture<LogEntry> entries = new StreamFuture<>();
+    _reader.readEntries(0, entries);
+
+    List<LogEntry> list = entries.get();
+
+    Assert.assertEquals(3, list.size());
+    Assert.assertEquals("aaa", list.get(0).getMessage());
+    Assert.assertEquals(1, list.get(0).getSequence());
+    Assert.assertEquals(list.get(0).getNextOffset(), list.get(1).getOffset());
+
+    StreamFuture<String> msgs = new StreamFuture<>();
+    _reader.read(list.get(1).getOffset(), msgs);
+
+    Assert.assertEquals(Arrays.asList("bbb", "ccc"), msgs.get());
+  }
+
+  @Test
+  public void testReadFrom()
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    _service.log("aaa");
+    _service.log("bbb");
+    _service.log("ccc", future);
+    future.get();
+
+    StreamFuture<LogEntry> entries = new StreamFuture<>();
+    _reader.readFrom(2, entries);
 
-      Assert.assertEquals(null, reader.readLine());
+    List<LogEntry> list = entries.get();
+
+    Assert.assertEquals(2, list.size());
+    Assert.assertEquals("bbb", list.get(0).getMessage());
+    Assert.assertEquals("ccc", list.get(1).getMessage());
+
+    long timestamp = list.get(0).getTimestamp();
+
+    entries = new StreamFuture<>();
+    _reader.readBetween(timestamp, timestamp, entries);
+
+    // "aaa" and "ccc" may share the millisecond
+    ArrayList<String> messages = new ArrayList<>();
+
+    for (LogEntry entry : entries.get()) {
+      messages.add(entry.getMessage());
     }
+
+    Assert.assertTrue(messages.contains("bbb"));
+  }
+
+  @Test
+  public void testStats()
+    throws Exception
+  {
+    ResultFuture<LogStatsSnapshot> statsFuture = new ResultFuture<>();
+    _stats.getStats(statsFuture);
+    long batches = statsFuture.get().getBatchSize().getCount();
+
+    ResultFuture<Void> future = new ResultFuture<>();
+    _service.logAll(Arrays.asList("aaa", "bbb", "ccc"), future);
+    future.get();
+
+    statsFuture = new ResultFuture<>();
+    _stats.getStats(statsFuture);
+    LogStatsSnapshot stats = statsFuture.get();
+
+    Assert.assertTrue(batches < stats.getBatchSize().getCount());
+    Assert.assertTrue(3 <= stats.getBatchSize().getMax());
+    Assert.assertTrue(0 < stats.getBatchBytes().getMax());
   }
 
   @Test
@@ -96,15 +262,257 @@ public class LogServiceTest
     _service.log("fff", future);
     future.get();
 
-    try (BufferedReader reader = new BufferedReader(new FileReader("/tmp/tutorial_log.txt"))) {
-      Assert.assertEquals("aaa", reader.readLine());
-      Assert.assertEquals("bbb", reader.readLine());
-      Assert.assertEquals("ccc", reader.readLine());
-      Assert.assertEquals("ddd", reader.readLine());
-      Assert.assertEquals("eee", reader.readLine());
-      Assert.assertEquals("fff", reader.readLine());
+    Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc", "ddd", "eee", "fff"),
+                        readLog());
+  }
+
+  @Test
+  public void testCompressed()
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    _compressed.log("aaa");
+    _compressed.logAll(Arrays.asList("bbb", "ccc", "ddd"), future);
+    future.get();
+
+    Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc", "ddd"),
+                        readLog(COMPRESSED_DIR));
+
+    restartBaratine();
+    future = new ResultFuture<>();
+
+    _compressed.log("eee");
+    _compressed.log("fff", future);
+    future.get();
+
+    Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc", "ddd", "eee", "fff"),
+                        readLog(COMPRESSED_DIR));
+
+    // the sequence continues from the last record in the last recovered block
+    StreamFuture<LogEntry> entries = new StreamFuture<>();
+    _compressedReader.readFrom(4, entries);
+
+    List<LogEntry> list = entries.get();
+
+    Assert.assertEquals(3, list.size());
+    Assert.assertEquals("ddd", list.get(0).getMessage());
+    Assert.assertEquals(4, list.get(0).getSequence());
+    Assert.assertEquals("eee", list.get(1).getMessage());
+    Assert.assertEquals(5, list.get(1).getSequence());
+    Assert.assertEquals(6, list.get(2).getSequence());
+  }
+
+  @Test
+  public void testDurable()
+    throws Exception
+  {
+    LogStats durableStats = LogStats.get(DURABLE_DIR.toString());
+    long fsyncs = durableStats.snapshot().getFsyncMicros().getCount();
+
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    _durable.log("aaa");
+    _durable.logAll(Arrays.asList("bbb", "ccc"));
+    _durable.log("ddd", future);
+    future.get();
+
+    // the batch holding "ddd" was forced before its results completed
+    Assert.assertTrue(fsyncs < durableStats.snapshot().getFsyncMicros().getCount());
+
+    // the default log isn't durable, so it never forces a batch
+    future = new ResultFuture<>();
+    _service.log("aaa", future);
+    future.get();
 
-      Assert.assertEquals(null, reader.readLine());
+    Assert.assertEquals(0, LogStats.get(LOG_DIR.toString()).snapshot().getFsyncMicros().getCount());
+
+    _testContext.closeImmediate();
+
+    Assert.assertEquals(Arrays.asList("aaa", "bbb", "ccc", "ddd"), readLog(DURABLE_DIR));
+
+    _testContext.start();
+  }
+
+  @Test
+  public void testShutdownStopsWriter()
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+    _service.log("aaa", future);
+    future.get();
+
+    Assert.assertTrue(0 < countWriterThreads());
+
+    // @OnDestroy stops every writer's I/O thread, even on an immediate close
+    _testContext.closeImmediate();
+
+    for (int i = 0; i < 100 && 0 < countWriterThreads(); i++) {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(0, countWriterThreads());
+
+    _testContext.start();
+  }
+
+  private static long countWriterThreads()
+  {
+    return Thread.getAllStackTraces().keySet().stream()
+                 .filter(thread -> LogWriter.class.getSimpleName().equals(thread.getName()))
+                 .filter(Thread::isAlive)
+                 .count();
+  }
+
+  @Test
+  public void testSegments()
+    throws Exception
+  {
+    int count = 100;
+    ArrayList<String> msgs = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      msgs.add(String.format("msg-%03d", i));
+    }
+
+    ResultFuture<Void> future = new ResultFuture<>();
+
+    _segmented.logAll(msgs.subList(0, count / 2));
+
+    for (int i = count / 2; i < count - 1; i++) {
+      _segmented.log(msgs.get(i));
+    }
+
+    _segmented.log(msgs.get(count - 1), future);
+    future.get();
+
+    // 31-byte records in 256-byte segments, rolled many times, and
+    // retention keeps only 1024 bytes of them
+    List<Path> paths = LogSegment.list(SEGMENTED_DIR);
+
+    Assert.assertTrue(paths.toString(), 1 < paths.size() && paths.size() <= 4);
+    Assert.assertTrue(0 < LogSegment.toBaseOffset(paths.get(0)));
+
+    for (Path path : paths) {
+      Assert.assertTrue(Files.exists(LogSegment.toIndexPath(path)));
+    }
+
+    // the last 20 records span at least three segments
+    StreamFuture<LogEntry> entries = new StreamFuture<>();
+    _segmentedReader.readFrom(count - 19, entries);
+
+    List<LogEntry> list = entries.get();
+
+    Assert.assertEquals(20, list.size());
+
+    for (int i = 0; i < list.size(); i++) {
+      Assert.assertEquals(count - 19 + i, list.get(i).getSequence());
+      Assert.assertEquals(msgs.get(count - 20 + i), list.get(i).getMessage());
+    }
+
+    Assert.assertTrue(list.get(0).getOffset() < LogSegment.toBaseOffset(paths.get(paths.size() - 2)));
+
+    // the first records are gone, so the read starts at the oldest one kept
+    entries = new StreamFuture<>();
+    _segmentedReader.readFrom(1, entries);
+
+    list = entries.get();
+
+    long first = list.get(0).getSequence();
+
+    Assert.assertTrue(1 < first);
+    Assert.assertEquals(count - first + 1, list.size());
+
+    for (int i = 0; i < list.size(); i++) {
+      Assert.assertEquals(first + i, list.get(i).getSequence());
+      Assert.assertEquals(msgs.get((int) first - 1 + i), list.get(i).getMessage());
+    }
+
+    // a timestamp lookup finds the same records
+    entries = new StreamFuture<>();
+    _segmentedReader.readBetween(0, Long.MAX_VALUE, entries);
+
+    Assert.assertEquals(list.size(), entries.get().size());
+  }
+
+  @Test
+  public void testRecordEncoding()
+  {
+    String []msgs = new String[] {
+      "",
+      "ascii",
+      "caf\u00e9 \u00fcber",
+      "\u65e5\u672c\u8a9e",
+      "emoji \ud83d\ude00 and \ud834\udd1e",
+      "high \ud83d alone",
+      "low \ude00 alone",
+      "reversed \ude00\ud83d",
+      "trailing \ud83d"
+    };
+
+    Crc32c crc = new Crc32c();
+
+    for (String msg : msgs) {
+      ByteBuffer buffer = ByteBuffer.allocate(LogRecord.getMaxLength(msg));
+      LogRecord.write(buffer, 1, 0, msg, crc);
+
+      byte []expected = msg.getBytes(StandardCharsets.UTF_8);
+      byte []actual = new byte[LogRecord.getLength(buffer, 0)];
+
+      buffer.position(LogRecord.HEADER_SIZE);
+      buffer.get(actual);
+
+      Assert.assertArrayEquals(msg, expected, actual);
+    }
+  }
+
+  private List<String> readLog()
+    throws IOException
+  {
+    return readLog(LOG_DIR);
+  }
+
+  private List<String> readLog(Path dir)
+    throws IOException
+  {
+    ArrayList<String> lines = new ArrayList<>();
+
+    new LogReader(dir).scan(0, (offset, nextOffset, buffer, pos) -> {
+      lines.add(LogRecord.getMessage(buffer, pos));
+
+      return true;
+    });
+
+    return lines;
+  }
+
+  static class StreamFuture<T> implements ResultStream<T>
+  {
+    private final ArrayList<T> _values = new ArrayList<>();
+    private final ResultFuture<List<T>> _future = new ResultFuture<>();
+
+    @Override
+    public void accept(T value)
+    {
+      _values.add(value);
+    }
+
+    @Override
+    public void complete()
+    {
+      _future.complete(_values);
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      _future.fail(e);
+    }
+
+    public List<T> get()
+      throws Exception
+    {
+      return _future.get(10, TimeUnit.SECONDS);
     }
   }
 
@@ -114,4 +522,59 @@ public class LogServiceTest
     _testContext.closeImmediate();
     _testContext.start();
   }
+
+  @Service("public:///log-compressed")
+  public static class CompressedLogServiceImpl extends LogServiceImpl
+  {
+    public CompressedLogServiceImpl()
+    {
+      super(new LogConfig().directory(COMPRESSED_DIR.toString())
+                           .compressed(true));
+    }
+  }
+
+  @Service("public:///log-compressed-reader")
+  public static class CompressedLogReaderServiceImpl extends LogReaderServiceImpl
+  {
+    public CompressedLogReaderServiceImpl()
+    {
+      super(new LogConfig().directory(COMPRESSED_DIR.toString()));
+    }
+  }
+
+  @Service("public:///log-durable")
+  public static class DurableLogServiceImpl extends LogServiceImpl
+  {
+    public DurableLogServiceImpl()
+    {
+      super(new LogConfig().directory(DURABLE_DIR.toString())
+                           .durable(true));
+    }
+  }
+
+  @Service("public:///log-segmented")
+  public static class SegmentedLogServiceImpl extends LogServiceImpl
+  {
+    public SegmentedLogServiceImpl()
+    {
+      super(segmentedConfig());
+    }
+  }
+
+  @Service("public:///log-segmented-reader")
+  public static class SegmentedLogReaderServiceImpl extends LogReaderServiceImpl
+  {
+    public SegmentedLogReaderServiceImpl()
+    {
+      super(segmentedConfig());
+    }
+  }
+
+  private static LogConfig segmentedConfig()
+  {
+    return new LogConfig().directory(SEGMENTED_DIR.toString())
+                          .segmentSize(256)
+                          .retentionBytes(1024)
+                          .indexInterval(64);
+  }
 }
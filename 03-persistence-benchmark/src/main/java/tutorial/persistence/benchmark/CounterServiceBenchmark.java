@@ -0,0 +1,199 @@
+package tutorial.persistence.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.caucho.v5.baratine.Baratine;
+import com.caucho.v5.baratine.embed.ServerBaratine;
+
+import io.baratine.core.ResultFuture;
+import io.baratine.core.ServiceClient;
+import io.baratine.core.ServiceManager;
+import io.baratine.core.ServiceRef;
+
+import tutorial.persistence.CounterService;
+import tutorial.persistence.CounterServiceImpl;
+import tutorial.persistence.CounterServiceSync;
+
+/**
+ * Cost of each layer on the counter's addAndGet() path.
+ *
+ * <pre>
+ *   transport=local  - in-process proxy from ServiceRef.as()
+ *   transport=remote - ServiceClient to http://127.0.0.1:8085/s/pod
+ *   journal=true     - the tutorial's @Journal counter
+ *   journal=false    - the same counter without a journal
+ * </pre>
+ *
+ * SampleTime mode reports the p50, p99 and p999 latencies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CounterServiceBenchmark
+{
+  private static final int PIPELINE = 100;
+
+  @Param({"local", "remote"})
+  public String transport;
+
+  @Param({"true", "false"})
+  public boolean journal;
+
+  private Path _root;
+  private ServerBaratine _server;
+  private ServiceClient _client;
+
+  private CounterServiceSync _sync;
+  private CounterService _async;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws IOException
+  {
+    _root = Files.createTempDirectory("counter-benchmark");
+
+    CounterServiceImpl impl;
+
+    if (journal) {
+      impl = new CounterServiceImpl();
+    }
+    else {
+      impl = new UnjournaledCounterServiceImpl();
+    }
+
+    _server = Baratine.newServer()
+                      .port(8085)
+                      .root("file:" + _root)
+                      .build();
+
+    ServiceManager manager = _server.newPod("pod")
+                                    .build()
+                                    .manager();
+
+    ServiceRef ref = manager.newService()
+                            .address("public:///counter")
+                            .service(impl)
+                            .build();
+
+    if ("remote".equals(transport)) {
+      _client = ServiceClient.newClient("http://127.0.0.1:8085/s/pod").build();
+
+      ref = _client.lookup("remote:///counter");
+    }
+
+    _sync = ref.as(CounterServiceSync.class);
+    _async = ref.as(CounterService.class);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+    throws IOException
+  {
+    if (_client != null) {
+      _client.close();
+    }
+
+    _server.close();
+
+    Files.walkFileTree(_root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+        throws IOException
+      {
+        Files.delete(file);
+
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e)
+        throws IOException
+      {
+        Files.delete(dir);
+
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Blocking proxy: CounterServiceSync.addAndGet(long).
+   */
+  @Benchmark
+  public long addAndGetSync()
+  {
+    return _sync.addAndGet(1);
+  }
+
+  /**
+   * Result-based call, one at a time: CounterService.addAndGet(long, Result).
+   */
+  @Benchmark
+  public long addAndGetAsync()
+    throws Exception
+  {
+    ResultFuture<Long> future = new ResultFuture<>();
+
+    _async.addAndGet(1, future);
+
+    return future.get();
+  }
+
+  /**
+   * Result-based calls with up to {@value #PIPELINE} in flight, which is
+   * where the async path differs from the blocking proxy.
+   */
+  @Benchmark
+  @OperationsPerInvocation(PIPELINE)
+  public long addAndGetAsyncPipelined()
+    throws Exception
+  {
+    ResultFuture<Long> future = null;
+
+    for (int i = 0; i < PIPELINE; i++) {
+      future = new ResultFuture<>();
+
+      _async.addAndGet(1, future);
+    }
+
+    // replies come back in order, so the last one covers the others
+    return future.get();
+  }
+
+  public static void main(String []args)
+    throws Exception
+  {
+    Options options = new OptionsBuilder()
+      .include(CounterServiceBenchmark.class.getSimpleName())
+      .build();
+
+    new Runner(options).run();
+  }
+}
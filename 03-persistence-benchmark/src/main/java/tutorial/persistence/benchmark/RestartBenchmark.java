@@ -0,0 +1,142 @@
+package tutorial.persistence.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import com.caucho.v5.baratine.Baratine;
+import com.caucho.v5.baratine.embed.ServerBaratine;
+
+import io.baratine.core.ServiceManager;
+
+import tutorial.persistence.CounterServiceImpl;
+import tutorial.persistence.CounterServiceSync;
+
+/**
+ * Measures how long a crashed counter service takes to come back, as a
+ * function of how many journal entries it has to replay.
+ *
+ * <p>For each run a child JVM makes {@code count} increments and then halts
+ * without shutting down, which leaves the entries in the journal.  This JVM
+ * then starts a server on the same root and times the first {@code get()},
+ * which is only answered after the replay and {@code @OnActive}.
+ */
+public class RestartBenchmark
+{
+  private static final int PORT = 8087;
+
+  private static final int []COUNTS = { 1000, 10000, 100000 };
+  private static final int []CHECKPOINT_THRESHOLDS = { 0, 1000 };
+
+  public static void main(String []args)
+    throws Exception
+  {
+    if (args.length > 0 && "write".equals(args[0])) {
+      write(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+
+      return;
+    }
+
+    System.out.println("increments  checkpoint-threshold  ms-to-active");
+
+    for (int count : COUNTS) {
+      for (int checkpointThreshold : CHECKPOINT_THRESHOLDS) {
+        Path root = Files.createTempDirectory("restart-benchmark");
+
+        try {
+          runWriter(root, count, checkpointThreshold);
+
+          long ms = timeToActive(root, count, checkpointThreshold);
+
+          System.out.printf("%10d  %20d  %12d%n", count, checkpointThreshold, ms);
+        }
+        finally {
+          Files.walk(root)
+               .sorted(Comparator.reverseOrder())
+               .map(Path::toFile)
+               .forEach(File::delete);
+        }
+      }
+    }
+  }
+
+  private static void runWriter(Path root, int count, int checkpointThreshold)
+    throws Exception
+  {
+    String java = System.getProperty("java.home") + "/bin/java";
+
+    Process process = new ProcessBuilder(java,
+                                         "-cp", System.getProperty("java.class.path"),
+                                         RestartBenchmark.class.getName(),
+                                         "write",
+                                         root.toString(),
+                                         String.valueOf(count),
+                                         String.valueOf(checkpointThreshold))
+      .inheritIO()
+      .start();
+
+    if (! process.waitFor(10, TimeUnit.MINUTES)) {
+      process.destroyForcibly();
+
+      throw new IllegalStateException("writer did not finish");
+    }
+  }
+
+  private static void write(String root, int count, int checkpointThreshold)
+    throws Exception
+  {
+    ServerBaratine server = newServer(root);
+
+    CounterServiceSync service = newCounter(server, checkpointThreshold);
+
+    for (int i = 0; i < count; i++) {
+      service.addAndGet(1);
+    }
+
+    // crash: skip the checkpoint that a normal shutdown would make
+    Runtime.getRuntime().halt(0);
+  }
+
+  private static long timeToActive(Path root, int count, int checkpointThreshold)
+    throws Exception
+  {
+    long startTime = System.nanoTime();
+
+    try (ServerBaratine server = newServer(root.toString())) {
+      CounterServiceSync service = newCounter(server, checkpointThreshold);
+
+      long value = service.get();
+
+      long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+      if (value != count) {
+        throw new IllegalStateException("expected " + count + " after recovery but was " + value);
+      }
+
+      return ms;
+    }
+  }
+
+  private static ServerBaratine newServer(String root)
+  {
+    return Baratine.newServer()
+                   .port(PORT)
+                   .root("file:" + root)
+                   .build();
+  }
+
+  private static CounterServiceSync newCounter(ServerBaratine server, int checkpointThreshold)
+  {
+    ServiceManager manager = server.newPod("pod")
+                                   .build()
+                                   .manager();
+
+    return manager.newService()
+                  .address("public:///counter")
+                  .service(new CounterServiceImpl(0, 1, checkpointThreshold))
+                  .build()
+                  .as(CounterServiceSync.class);
+  }
+}
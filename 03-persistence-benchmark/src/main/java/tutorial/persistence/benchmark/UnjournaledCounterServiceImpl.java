@@ -0,0 +1,12 @@
+package tutorial.persistence.benchmark;
+
+import tutorial.persistence.CounterServiceImpl;
+
+/**
+ * The tutorial counter without {@code @Journal}, to measure what the journal
+ * costs.  {@code @Journal} is not inherited, so this subclass runs
+ * unjournaled.
+ */
+public class UnjournaledCounterServiceImpl extends CounterServiceImpl
+{
+}
@@ -0,0 +1,153 @@
+package tutorial.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.inject.Inject;
+
+import io.baratine.core.AfterBatch;
+import io.baratine.core.Lookup;
+import io.baratine.core.OnInit;
+import io.baratine.core.Result;
+import io.baratine.core.Service;
+import io.baratine.core.ServiceManager;
+import io.baratine.store.Store;
+
+/**
+ * A counter that folds all of the increments in one inbox batch into a single
+ * journaled increment.
+ *
+ * <p>This front service has no journal.  {@link #addAndGet} only records the
+ * delta and the running value the caller should see.  {@code @AfterBatch}
+ * sends the combined delta as one {@code @Modify} call to a journaled
+ * {@link CounterShardImpl} at the internal address {@code /counter-combining},
+ * which clients outside the pod can't reach.  Once that call has been
+ * journaled and applied, every caller in the batch gets its own running value.
+ */
+@Service("public:///counter-combining")
+public class CombiningCounterServiceImpl implements CounterService
+{
+  // the counter's value in the last reply from the journaled counter
+  private long _count;
+
+  // deltas sent to the journaled counter that have not been answered yet
+  private long _inFlightDelta;
+
+  private PendingDeltas _pending = new PendingDeltas();
+
+  private CounterService _counter;
+
+  @Inject @Lookup("store:///counter-combining")
+  private Store<byte[]> _store;
+
+  @OnInit
+  public void onInit(Result<Void> result)
+  {
+    _counter = ServiceManager.current().newService()
+                             .address("/counter-combining")
+                             .service(new CounterShardImpl(_store))
+                             .build()
+                             .as(CounterService.class);
+
+    _counter.get(result.from(value -> onCount(value)));
+  }
+
+  private Void onCount(long value)
+  {
+    _count = value;
+
+    return null;
+  }
+
+  public void get(Result<Long> result)
+  {
+    _counter.get(result);
+  }
+
+  public void addAndGet(long value, Result<Long> result)
+  {
+    _pending.add(value, _count + _inFlightDelta, result);
+  }
+
+  @AfterBatch
+  public void afterBatch()
+  {
+    if (_pending.isEmpty()) {
+      return;
+    }
+
+    PendingDeltas pending = _pending;
+    long delta = pending.getDelta();
+
+    _pending = new PendingDeltas();
+    _inFlightDelta += delta;
+
+    // replies come back in order, so each one includes the deltas before it
+    _counter.addAndGet(delta, new Result<Long>() {
+      @Override
+      public void complete(Long value)
+      {
+        _count = value;
+        _inFlightDelta -= delta;
+
+        pending.complete();
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        // not applied, so later callers must not count it
+        _inFlightDelta -= delta;
+
+        pending.fail(e);
+      }
+    });
+  }
+
+  /**
+   * The callers of one batch, with the running value each one will see.
+   */
+  private static class PendingDeltas
+  {
+    private final ArrayList<Result<Long>> _results = new ArrayList<>();
+    private long []_values = new long[16];
+    private long _delta;
+
+    boolean isEmpty()
+    {
+      return _results.isEmpty();
+    }
+
+    long getDelta()
+    {
+      return _delta;
+    }
+
+    void add(long value, long base, Result<Long> result)
+    {
+      int index = _results.size();
+
+      if (index == _values.length) {
+        _values = Arrays.copyOf(_values, 2 * index);
+      }
+
+      _delta += value;
+      _values[index] = base + _delta;
+      _results.add(result);
+    }
+
+    void complete()
+    {
+      for (int i = 0; i < _results.size(); i++) {
+        _results.get(i).complete(_values[i]);
+      }
+    }
+
+    void fail(Throwable e)
+    {
+      for (Result<Long> result : _results) {
+        result.fail(e);
+      }
+    }
+  }
+}
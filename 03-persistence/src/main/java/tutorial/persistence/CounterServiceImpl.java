@@ -1,25 +1,77 @@
 package tutorial.persistence;
 
-import javax.inject.Inject;
-
+import io.baratine.core.AfterBatch;
 import io.baratine.core.Journal;
-import io.baratine.core.Lookup;
 import io.baratine.core.Modify;
 import io.baratine.core.OnActive;
 import io.baratine.core.OnLoad;
 import io.baratine.core.OnSave;
 import io.baratine.core.Result;
 import io.baratine.core.Service;
+import io.baratine.core.ServiceManager;
+import io.baratine.core.ServiceRef;
 import io.baratine.store.Store;
 
 @Journal
 @Service("public:///counter")
 public class CounterServiceImpl
 {
+  public static final int WINDOW_SECONDS = 300;
+
   private long _count;
 
-  @Inject @Lookup("store:///counter")
-  private Store<Long> _store;
+  private final RateWindow _window = new RateWindow(WINDOW_SECONDS);
+
+  private final SavePolicy _savePolicy;
+
+  private final int _checkpointThreshold;
+  private boolean _isCheckpointPending;
+
+  private final String _storeAddress;
+  private Store<byte[]> _store;
+
+  private LongStore _longStore;
+
+  private CounterView _view;
+
+  public CounterServiceImpl()
+  {
+    this(0, 1, 0);
+  }
+
+  public CounterServiceImpl(long saveInterval, int saveThreshold)
+  {
+    this(saveInterval, saveThreshold, 0);
+  }
+
+  /**
+   * Coalesces checkpoints as described in {@link SavePolicy}, which only a
+   * subclass without {@code @Journal} may do.
+   *
+   * <p>A positive {@code checkpointThreshold} requests a checkpoint once that
+   * many modifications are unsaved, which bounds how much journal has to be
+   * replayed on restart.
+   */
+  public CounterServiceImpl(long saveInterval,
+                            int saveThreshold,
+                            int checkpointThreshold)
+  {
+    this("store:///counter", saveInterval, saveThreshold, checkpointThreshold);
+  }
+
+  /**
+   * Keeps the counter under {@code storeAddress}, so that subclasses
+   * running at other addresses don't share its keys.
+   */
+  public CounterServiceImpl(String storeAddress,
+                            long saveInterval,
+                            int saveThreshold,
+                            int checkpointThreshold)
+  {
+    _storeAddress = storeAddress;
+    _savePolicy = new SavePolicy(getClass(), saveInterval, saveThreshold);
+    _checkpointThreshold = checkpointThreshold;
+  }
 
   public void get(Result<Long> result)
   {
@@ -30,19 +82,105 @@ public class CounterServiceImpl
   public void addAndGet(long value, Result<Long> result)
   {
     _count += value;
+    _savePolicy.modify();
 
     result.complete(_count);
   }
 
+  /**
+   * Like {@link #addAndGet}, but also records the value in the sliding window
+   * used by {@link #sumOver} and {@link #rate}, in the second of
+   * {@code timestamp}.  The timestamp is journaled with the call, so a replay
+   * records the value in its original second rather than at replay time.
+   * A timestamp ahead of the clock counts as now.
+   */
+  @Modify
+  public void addAt(long value, long timestamp, Result<Long> result)
+  {
+    _count += value;
+    _window.add(Math.min(timestamp, System.currentTimeMillis()), value);
+    _savePolicy.modify();
+
+    result.complete(_count);
+  }
+
+  public void sumOver(int windowSeconds, Result<Long> result)
+  {
+    result.complete(_window.sum(System.currentTimeMillis(), windowSeconds));
+  }
+
+  public void rate(int windowSeconds, Result<Double> result)
+  {
+    result.complete(_window.rate(System.currentTimeMillis(), windowSeconds));
+  }
+
+  @AfterBatch
+  public void afterBatch()
+  {
+    _view.publish(_count);
+
+    if (_checkpointThreshold <= 0
+        || _savePolicy.getModifyCount() < _checkpointThreshold
+        || _isCheckpointPending) {
+      return;
+    }
+
+    _isCheckpointPending = true;
+
+    // saves the service and rolls the journal over
+    ServiceRef.current().save(new Result<Boolean>() {
+      @Override
+      public void complete(Boolean isSaved)
+      {
+        _isCheckpointPending = false;
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        _isCheckpointPending = false;
+      }
+    });
+  }
+
   @OnLoad
   public void onLoad(Result<Void> result)
   {
-    _store.get("count", result.from(value -> onLoadComplete(value)));
+    @SuppressWarnings("unchecked")
+    Store<byte[]> store = ServiceManager.current().lookup(_storeAddress).as(Store.class);
+
+    _store = store;
+    _longStore = new LongStore(_store);
+    _view = CounterView.create(ServiceRef.current().address());
+
+    _longStore.get("count", 0, value -> onLoadComplete(value), new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        _store.get("window", result.from(data -> onLoadWindow(data)));
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        result.fail(e);
+      }
+    });
   }
 
-  private Void onLoadComplete(Long value)
+  private void onLoadComplete(long value)
   {
-    _count = value != null ? value : 0L;
+    _count = value;
+    _savePolicy.onLoad();
+
+    _view.publish(_count);
+  }
+
+  private Void onLoadWindow(byte []data)
+  {
+    if (data != null) {
+      _window.decode(data, System.currentTimeMillis());
+    }
 
     return null;
   }
@@ -50,7 +188,43 @@ public class CounterServiceImpl
   @OnSave
   public void onSave(Result<Void> result)
   {
-    _store.put("count", _count, result);
+    if (! isSaveRequired()) {
+      result.complete(null);
+
+      return;
+    }
+
+    int modifyCount = _savePolicy.getModifyCount();
+
+    Result<Void> saveResult = result.from(v -> onSaveComplete(modifyCount));
+    byte []window = _window.encode(System.currentTimeMillis());
+
+    _longStore.put("count", _count, new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        _store.put("window", window, saveResult);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        saveResult.fail(e);
+      }
+    });
+  }
+
+  private boolean isSaveRequired()
+  {
+    return _savePolicy.isSaveRequired()
+           || _isCheckpointPending && _savePolicy.isDirty();
+  }
+
+  private Void onSaveComplete(int modifyCount)
+  {
+    _savePolicy.onSave(modifyCount);
+
+    return null;
   }
 
   @OnActive
@@ -0,0 +1,49 @@
+package tutorial.persistence;
+
+import io.baratine.core.Journal;
+import io.baratine.core.Modify;
+import io.baratine.core.OnLoad;
+import io.baratine.core.OnSave;
+import io.baratine.core.Result;
+import io.baratine.store.Store;
+
+/**
+ * One stripe of a {@link StripedCounterServiceImpl}.  Each shard is its own
+ * service with its own inbox and journal.
+ */
+@Journal
+public class CounterShardImpl implements CounterService
+{
+  private long _count;
+  private LongStore _store;
+
+  public CounterShardImpl(Store<byte[]> store)
+  {
+    _store = new LongStore(store);
+  }
+
+  public void get(Result<Long> result)
+  {
+    result.complete(_count);
+  }
+
+  @Modify
+  public void addAndGet(long value, Result<Long> result)
+  {
+    _count += value;
+
+    result.complete(_count);
+  }
+
+  @OnLoad
+  public void onLoad(Result<Void> result)
+  {
+    _store.get("count", 0, value -> _count = value, result);
+  }
+
+  @OnSave
+  public void onSave(Result<Void> result)
+  {
+    _store.put("count", _count, result);
+  }
+}
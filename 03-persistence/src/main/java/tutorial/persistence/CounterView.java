@@ -0,0 +1,47 @@
+package tutorial.persistence;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last value a counter service published, readable from any thread
+ * without going through the service's inbox.
+ *
+ * <p>A counter publishes its value at the end of every batch, so a view can
+ * lag the service by at most one batch.  Callers that need the exact value
+ * should call the service's {@code get()} instead.
+ */
+public final class CounterView
+{
+  private static final ConcurrentHashMap<String,CounterView> _views
+    = new ConcurrentHashMap<>();
+
+  private volatile long _value;
+
+  private CounterView()
+  {
+  }
+
+  /**
+   * Returns the view of the counter at {@code address}, or null if no counter
+   * has been loaded there in this JVM.
+   */
+  public static CounterView lookup(String address)
+  {
+    return _views.get(address);
+  }
+
+  static CounterView create(String address)
+  {
+    return _views.computeIfAbsent(address, a -> new CounterView());
+  }
+
+  public long get()
+  {
+    return _value;
+  }
+
+  void publish(long value)
+  {
+    _value = value;
+  }
+}
@@ -0,0 +1,17 @@
+package tutorial.persistence;
+
+import java.util.List;
+import java.util.Map;
+
+import io.baratine.core.Result;
+
+public interface KeyedCounterService
+{
+  void get(String key, Result<Long> result);
+
+  void addAndGet(String key, long delta, Result<Long> result);
+
+  void getAll(List<String> keys, Result<long[]> result);
+
+  void scan(String prefix, Result<Map<String,Long>> result);
+}
@@ -0,0 +1,389 @@
+package tutorial.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.baratine.core.Journal;
+import io.baratine.core.Modify;
+import io.baratine.core.OnLoad;
+import io.baratine.core.OnSave;
+import io.baratine.core.Result;
+import io.baratine.core.Service;
+import io.baratine.core.ServiceManager;
+import io.baratine.store.Store;
+
+/**
+ * Many named counters in one service.  The counters live in a
+ * {@link StringLongMap} and are saved as a snapshot of sorted blocks:
+ * {@code block/<generation>/<n>} holds up to {@link #BLOCK_SIZE} entries of
+ * (UTF-8 key, long value), and {@code blocks} holds the generation and block
+ * count of the current snapshot.
+ *
+ * <p>Each save writes a new generation and only then switches {@code blocks}
+ * to it, so a save that fails part way leaves the previous snapshot intact
+ * for the journal to replay onto.  Generations only go up, and a save that
+ * arrives while another is in flight waits for it, so an older snapshot
+ * never replaces a newer one.
+ */
+@Journal
+@Service("public:///counters")
+public class KeyedCounterServiceImpl implements KeyedCounterService
+{
+  private static final Logger log
+    = Logger.getLogger(KeyedCounterServiceImpl.class.getName());
+
+  public static final int BLOCK_SIZE = 1024;
+
+  private StringLongMap _counters = new StringLongMap();
+
+  private final String _storeAddress;
+  private final int _blockSize;
+
+  // generation and block count of the snapshot "blocks" points to
+  private int _generation;
+  private int _blockCount;
+
+  private int _nextGeneration = 1;
+  private boolean _isSaving;
+  private ArrayList<Result<Void>> _pendingSaves = new ArrayList<>();
+  private final SavePolicy _savePolicy = new SavePolicy();
+
+  private Store<byte[]> _store;
+  private LongStore _longStore;
+
+  public KeyedCounterServiceImpl()
+  {
+    this("store:///counters", BLOCK_SIZE);
+  }
+
+  public KeyedCounterServiceImpl(String storeAddress, int blockSize)
+  {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+    }
+
+    _storeAddress = storeAddress;
+    _blockSize = blockSize;
+  }
+
+  public void get(String key, Result<Long> result)
+  {
+    result.complete(_counters.get(key, 0));
+  }
+
+  @Modify
+  public void addAndGet(String key, long delta, Result<Long> result)
+  {
+    _savePolicy.modify();
+
+    result.complete(_counters.addAndGet(key, delta));
+  }
+
+  public void getAll(List<String> keys, Result<long[]> result)
+  {
+    long []values = new long[keys.size()];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = _counters.get(keys.get(i), 0);
+    }
+
+    result.complete(values);
+  }
+
+  public void scan(String prefix, Result<Map<String,Long>> result)
+  {
+    Map<String,Long> map = new TreeMap<>();
+
+    for (String key : _counters.sortedKeys(prefix)) {
+      map.put(key, _counters.get(key, 0));
+    }
+
+    result.complete(map);
+  }
+
+  @OnLoad
+  public void onLoad(Result<Void> result)
+  {
+    @SuppressWarnings("unchecked")
+    Store<byte[]> store = ServiceManager.current().lookup(_storeAddress).as(Store.class);
+
+    _store = store;
+    _longStore = new LongStore(_store);
+
+    _longStore.get("blocks", 0, blocks -> onLoadBlocks(blocks), new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        loadBlock(0, result);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        result.fail(e);
+      }
+    });
+  }
+
+  private void onLoadBlocks(long blocks)
+  {
+    // generation in the high word, block count in the low word
+    _generation = (int) (blocks >>> 32);
+    _blockCount = (int) blocks;
+    _nextGeneration = _generation + 1;
+  }
+
+  private void loadBlock(int index, Result<Void> result)
+  {
+    if (_blockCount <= index) {
+      result.complete(null);
+
+      return;
+    }
+
+    _store.get(blockKey(_generation, index), new Result<byte[]>() {
+      @Override
+      public void complete(byte []block)
+      {
+        if (block != null) {
+          decodeBlock(block);
+        }
+
+        loadBlock(index + 1, result);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        result.fail(e);
+      }
+    });
+  }
+
+  @OnSave
+  public void onSave(Result<Void> result)
+  {
+    if (_isSaving) {
+      _pendingSaves.add(result);
+
+      return;
+    }
+
+    save(result);
+  }
+
+  private void save(Result<Void> result)
+  {
+    if (! _savePolicy.isDirty()) {
+      result.complete(null);
+
+      return;
+    }
+
+    _isSaving = true;
+
+    String []keys = _counters.sortedKeys();
+    int blockCount = (keys.length + _blockSize - 1) / _blockSize;
+    int generation = _nextGeneration++;
+    int modifyCount = _savePolicy.getModifyCount();
+
+    Result<Void> saveResult = new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        onSaveComplete(generation, blockCount, modifyCount);
+
+        result.complete(null);
+
+        onSaveDone();
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        result.fail(e);
+
+        onSaveDone();
+      }
+    };
+
+    // the new generation must be complete before blocks points to it
+    SaveJoin join = new SaveJoin(blockCount, new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        long blocks = ((long) generation << 32) | blockCount;
+
+        _longStore.put("blocks", blocks, saveResult);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        saveResult.fail(e);
+      }
+    });
+
+    for (int i = 0; i < blockCount; i++) {
+      int start = i * _blockSize;
+      int end = Math.min(start + _blockSize, keys.length);
+
+      _store.put(blockKey(generation, i), encodeBlock(keys, start, end), join);
+    }
+
+    if (blockCount == 0) {
+      join.complete(null);
+    }
+  }
+
+  private void onSaveComplete(int generation, int blockCount, int modifyCount)
+  {
+    // the generation that was live when this save started
+    int oldGeneration = _generation;
+    int oldBlockCount = _blockCount;
+
+    _generation = generation;
+    _blockCount = blockCount;
+    _savePolicy.onSave(modifyCount);
+
+    // the old generation is no longer reachable, so failing to remove it
+    // only leaves garbage
+    for (int i = 0; i < oldBlockCount; i++) {
+      String key = blockKey(oldGeneration, i);
+
+      _store.remove(key, new Result<Void>() {
+        @Override
+        public void complete(Void value)
+        {
+        }
+
+        @Override
+        public void fail(Throwable e)
+        {
+          log.log(Level.FINE, "failed to remove " + key, e);
+        }
+      });
+    }
+  }
+
+  /**
+   * Starts one save for every save that arrived while the last one was in
+   * flight.  It snapshots the counters now, so it covers all of them.
+   */
+  private void onSaveDone()
+  {
+    _isSaving = false;
+
+    if (_pendingSaves.isEmpty()) {
+      return;
+    }
+
+    ArrayList<Result<Void>> pending = _pendingSaves;
+    _pendingSaves = new ArrayList<>();
+
+    save(new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        for (Result<Void> result : pending) {
+          result.complete(null);
+        }
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        for (Result<Void> result : pending) {
+          result.fail(e);
+        }
+      }
+    });
+  }
+
+  private static String blockKey(int generation, int index)
+  {
+    return "block/" + generation + "/" + index;
+  }
+
+  private byte []encodeBlock(String []keys, int start, int end)
+  {
+    byte [][]keyBytes = new byte[end - start][];
+    int length = 4;
+
+    for (int i = start; i < end; i++) {
+      keyBytes[i - start] = keys[i].getBytes(StandardCharsets.UTF_8);
+
+      length += 4 + keyBytes[i - start].length + 8;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+
+    buffer.putInt(end - start);
+
+    for (int i = start; i < end; i++) {
+      byte []key = keyBytes[i - start];
+
+      buffer.putInt(key.length);
+      buffer.put(key);
+      buffer.putLong(_counters.get(keys[i], 0));
+    }
+
+    return buffer.array();
+  }
+
+  private void decodeBlock(byte []block)
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(block);
+
+    int count = buffer.getInt();
+
+    for (int i = 0; i < count; i++) {
+      int keyLength = buffer.getInt();
+      String key = new String(block, buffer.position(), keyLength, StandardCharsets.UTF_8);
+
+      buffer.position(buffer.position() + keyLength);
+
+      _counters.put(key, buffer.getLong());
+    }
+  }
+
+  /**
+   * Completes the save once every block write has completed.
+   */
+  private static class SaveJoin implements Result<Void>
+  {
+    private final Result<Void> _result;
+    private int _pending;
+    private boolean _isFailed;
+
+    SaveJoin(int pending, Result<Void> result)
+    {
+      _pending = pending;
+      _result = result;
+    }
+
+    @Override
+    public void complete(Void value)
+    {
+      if (--_pending == 0 && ! _isFailed) {
+        _result.complete(null);
+      }
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      if (! _isFailed) {
+        _isFailed = true;
+
+        _result.fail(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package tutorial.persistence;
+
+import java.util.List;
+import java.util.Map;
+
+public interface KeyedCounterServiceSync extends KeyedCounterService
+{
+  long get(String key);
+
+  long addAndGet(String key, long delta);
+
+  long []getAll(List<String> keys);
+
+  Map<String,Long> scan(String prefix);
+}
@@ -0,0 +1,102 @@
+package tutorial.persistence;
+
+import java.util.function.LongConsumer;
+
+import io.baratine.core.Result;
+import io.baratine.store.Store;
+
+/**
+ * A {@code long}-valued view of a {@code Store}.  Values are written as
+ * fixed-width 8-byte big-endian arrays, so the store doesn't go through
+ * generic object serialization for a {@code Long}.  The store API still
+ * takes an object, so each {@link #put} allocates its 8-byte array.
+ *
+ * <p>Values written as a {@code Long} before this format are still read, and
+ * are rewritten as 8 bytes on the next put.
+ *
+ * <p>Like the rest of a service's state, a {@code LongStore} must only be used
+ * from its owning service's thread.
+ */
+public class LongStore
+{
+  public static final int VALUE_LENGTH = 8;
+
+  private final Store<Object> _store;
+
+  @SuppressWarnings("unchecked")
+  public LongStore(Store<?> store)
+  {
+    // erased to Store<Object>, so a legacy Long isn't cast to byte[]
+    _store = (Store<Object>) store;
+  }
+
+  /**
+   * Passes the stored value, or {@code defaultValue} if the key is absent, to
+   * {@code onValue} and then completes {@code result}.
+   */
+  public void get(String key,
+                  long defaultValue,
+                  LongConsumer onValue,
+                  Result<Void> result)
+  {
+    _store.get(key, result.from(value -> {
+      onValue.accept(value != null ? toLong(value) : defaultValue);
+
+      return null;
+    }));
+  }
+
+  public void put(String key, long value, Result<Void> result)
+  {
+    _store.put(key, encode(value), result);
+  }
+
+  public void remove(String key, Result<Void> result)
+  {
+    _store.remove(key, result);
+  }
+
+  public static byte []encode(long value)
+  {
+    byte []data = new byte[VALUE_LENGTH];
+
+    for (int i = VALUE_LENGTH - 1; i >= 0; i--) {
+      data[i] = (byte) value;
+      value >>>= 8;
+    }
+
+    return data;
+  }
+
+  /**
+   * Decodes a stored value, which is either the 8-byte encoding or a
+   * {@code Long} written before it.
+   */
+  public static long toLong(Object value)
+  {
+    if (value instanceof byte[]) {
+      return decode((byte []) value);
+    }
+    else if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    else {
+      throw new IllegalStateException("unexpected stored value: " + value.getClass().getName());
+    }
+  }
+
+  public static long decode(byte []data)
+  {
+    if (data.length != VALUE_LENGTH) {
+      throw new IllegalStateException("expected " + VALUE_LENGTH + " bytes but found " + data.length);
+    }
+
+    long value = 0;
+
+    for (int i = 0; i < VALUE_LENGTH; i++) {
+      value = (value << 8) | (data[i] & 0xff);
+    }
+
+    return value;
+  }
+}
@@ -0,0 +1,12 @@
+package tutorial.persistence;
+
+import io.baratine.core.Result;
+
+public interface RateCounterService extends CounterService
+{
+  void addAt(long value, long timestamp, Result<Long> result);
+
+  void sumOver(int windowSeconds, Result<Long> result);
+
+  void rate(int windowSeconds, Result<Double> result);
+}
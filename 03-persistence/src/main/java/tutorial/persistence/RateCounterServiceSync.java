@@ -0,0 +1,10 @@
+package tutorial.persistence;
+
+public interface RateCounterServiceSync extends RateCounterService, CounterServiceSync
+{
+  long addAt(long value, long timestamp);
+
+  long sumOver(int windowSeconds);
+
+  double rate(int windowSeconds);
+}
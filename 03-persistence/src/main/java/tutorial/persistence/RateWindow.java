@@ -0,0 +1,154 @@
+package tutorial.persistence;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A sliding window of per-second {@code long} buckets kept in a ring.  Moving
+ * the window forward only zeroes the buckets that fell out of it, so adds and
+ * reads never allocate.
+ */
+public class RateWindow
+{
+  private final long []_buckets;
+
+  // the second held by the newest bucket
+  private long _second;
+
+  public RateWindow(int seconds)
+  {
+    if (seconds <= 0) {
+      throw new IllegalArgumentException("seconds must be positive: " + seconds);
+    }
+
+    _buckets = new long[seconds];
+  }
+
+  public int getSeconds()
+  {
+    return _buckets.length;
+  }
+
+  /**
+   * Adds {@code value} to the bucket of {@code time}'s second.  A time ahead
+   * of the newest bucket moves the window forward; a time older than the
+   * window is dropped.
+   */
+  public void add(long time, long value)
+  {
+    long second = time / 1000;
+    long newest = advance(time);
+
+    if (newest - second < _buckets.length) {
+      _buckets[index(second)] += value;
+    }
+  }
+
+  /**
+   * Returns the sum of the last {@code seconds} buckets, including the
+   * current, partial second.
+   */
+  public long sum(long now, int seconds)
+  {
+    long second = advance(now);
+    int count = Math.min(seconds, _buckets.length);
+    long sum = 0;
+
+    for (int i = 0; i < count; i++) {
+      sum += _buckets[index(second - i)];
+    }
+
+    return sum;
+  }
+
+  /**
+   * Returns the average per-second rate over the last {@code seconds}.
+   */
+  public double rate(long now, int seconds)
+  {
+    int count = Math.min(seconds, _buckets.length);
+
+    return count > 0 ? (double) sum(now, count) / count : 0;
+  }
+
+  /**
+   * Encodes the live part of the window: the newest second, the number of
+   * buckets from the oldest non-zero one, then those buckets oldest first.
+   */
+  public byte []encode(long now)
+  {
+    long second = advance(now);
+    int count = _buckets.length;
+
+    while (count > 0 && _buckets[index(second - count + 1)] == 0) {
+      count--;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + 8 * count);
+
+    buffer.putLong(second);
+    buffer.putInt(count);
+
+    for (int i = count - 1; i >= 0; i--) {
+      buffer.putLong(_buckets[index(second - i)]);
+    }
+
+    return buffer.array();
+  }
+
+  public void decode(byte []data, long now)
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+
+    long second = buffer.getLong();
+    int count = buffer.getInt();
+
+    clear(second);
+
+    for (int i = count - 1; i >= 0; i--) {
+      long value = buffer.getLong();
+
+      if (i < _buckets.length) {
+        _buckets[index(second - i)] = value;
+      }
+    }
+
+    advance(now);
+  }
+
+  private long advance(long now)
+  {
+    long second = now / 1000;
+
+    if (second <= _second) {
+      // clock went backwards or same second: keep using the newest bucket
+      return _second;
+    }
+
+    if (_buckets.length <= second - _second) {
+      clear(second);
+    }
+    else {
+      for (long s = _second + 1; s <= second; s++) {
+        _buckets[index(s)] = 0;
+      }
+
+      _second = second;
+    }
+
+    return second;
+  }
+
+  private void clear(long second)
+  {
+    for (int i = 0; i < _buckets.length; i++) {
+      _buckets[i] = 0;
+    }
+
+    _second = second;
+  }
+
+  private int index(long second)
+  {
+    return (int) Math.floorMod(second, (long) _buckets.length);
+  }
+}
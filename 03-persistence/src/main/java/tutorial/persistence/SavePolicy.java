@@ -0,0 +1,85 @@
+package tutorial.persistence;
+
+import io.baratine.core.Journal;
+
+/**
+ * Tracks a service's modifications since its last completed save, and decides
+ * whether its {@code @OnSave} needs to write.  An unmodified service never
+ * writes.  A modified one writes once {@code saveThreshold} modifications
+ * have accumulated or {@code saveInterval} ms have passed since the last
+ * write.
+ *
+ * <p>Baratine truncates the journal of a {@code @Journal} service once its
+ * {@code @OnSave} completes, so a skipped save would lose the journaled
+ * modifications.  Only services without a journal may defer saves.
+ */
+public class SavePolicy
+{
+  private final long _saveInterval;
+  private final int _saveThreshold;
+
+  private int _modifyCount;
+  private long _lastSaveTime;
+
+  /**
+   * Writes on every save that follows a modification.
+   */
+  public SavePolicy()
+  {
+    _saveInterval = 0;
+    _saveThreshold = 1;
+  }
+
+  public SavePolicy(Class<?> serviceClass, long saveInterval, int saveThreshold)
+  {
+    if (saveThreshold < 1) {
+      throw new IllegalArgumentException("saveThreshold must be at least 1: " + saveThreshold);
+    }
+
+    if ((0 < saveInterval || 1 < saveThreshold)
+        && serviceClass.isAnnotationPresent(Journal.class)) {
+      throw new IllegalArgumentException(serviceClass.getSimpleName()
+                                         + " has a @Journal, so it can't defer saves");
+    }
+
+    _saveInterval = saveInterval;
+    _saveThreshold = saveThreshold;
+  }
+
+  public void modify()
+  {
+    _modifyCount++;
+  }
+
+  public int getModifyCount()
+  {
+    return _modifyCount;
+  }
+
+  public boolean isDirty()
+  {
+    return 0 < _modifyCount;
+  }
+
+  public boolean isSaveRequired()
+  {
+    return isDirty()
+           && (_saveThreshold <= _modifyCount
+               || _saveInterval <= System.currentTimeMillis() - _lastSaveTime);
+  }
+
+  public void onLoad()
+  {
+    _lastSaveTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Called when a save of {@code modifyCount} modifications has completed.
+   * Modifications made while it was in flight are still dirty.
+   */
+  public void onSave(int modifyCount)
+  {
+    _modifyCount -= modifyCount;
+    _lastSaveTime = System.currentTimeMillis();
+  }
+}
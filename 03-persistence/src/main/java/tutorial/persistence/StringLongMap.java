@@ -0,0 +1,156 @@
+package tutorial.persistence;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from {@code String} keys to primitive
+ * {@code long} values, using linear probing.  Entries are kept in two flat
+ * arrays, so there is no per-entry object and no boxing.
+ *
+ * <p>Entries cannot be removed; counters only ever get added.
+ */
+public class StringLongMap
+{
+  private static final int MIN_CAPACITY = 16;
+
+  private String []_keys;
+  private long []_values;
+  private int _size;
+
+  public StringLongMap()
+  {
+    this(MIN_CAPACITY);
+  }
+
+  public StringLongMap(int expectedSize)
+  {
+    int capacity = MIN_CAPACITY;
+
+    while (capacity < 2 * expectedSize) {
+      capacity *= 2;
+    }
+
+    _keys = new String[capacity];
+    _values = new long[capacity];
+  }
+
+  public int size()
+  {
+    return _size;
+  }
+
+  public boolean containsKey(String key)
+  {
+    return _keys[indexOf(key)] != null;
+  }
+
+  public long get(String key, long defaultValue)
+  {
+    int index = indexOf(key);
+
+    return _keys[index] != null ? _values[index] : defaultValue;
+  }
+
+  public void put(String key, long value)
+  {
+    _values[insert(key)] = value;
+  }
+
+  public long addAndGet(String key, long delta)
+  {
+    int index = insert(key);
+
+    return _values[index] += delta;
+  }
+
+  /**
+   * Returns the keys in ascending order.
+   */
+  public String []sortedKeys()
+  {
+    return sortedKeys("");
+  }
+
+  /**
+   * Returns the keys starting with {@code prefix} in ascending order.
+   */
+  public String []sortedKeys(String prefix)
+  {
+    String []keys = new String[_size];
+    int count = 0;
+
+    for (String key : _keys) {
+      if (key != null && key.startsWith(prefix)) {
+        keys[count++] = key;
+      }
+    }
+
+    Arrays.sort(keys, 0, count);
+
+    return count == keys.length ? keys : Arrays.copyOf(keys, count);
+  }
+
+  private int insert(String key)
+  {
+    int index = indexOf(key);
+
+    if (_keys[index] != null) {
+      return index;
+    }
+
+    // keep the load factor at or below 1/2
+    if (2 * (_size + 1) > _keys.length) {
+      resize(2 * _keys.length);
+
+      index = indexOf(key);
+    }
+
+    _keys[index] = key;
+    _size++;
+
+    return index;
+  }
+
+  private int indexOf(String key)
+  {
+    int mask = _keys.length - 1;
+    int index = mix(key.hashCode()) & mask;
+
+    while (true) {
+      String entry = _keys[index];
+
+      if (entry == null || entry.equals(key)) {
+        return index;
+      }
+
+      index = (index + 1) & mask;
+    }
+  }
+
+  private void resize(int capacity)
+  {
+    String []oldKeys = _keys;
+    long []oldValues = _values;
+
+    _keys = new String[capacity];
+    _values = new long[capacity];
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      String key = oldKeys[i];
+
+      if (key != null) {
+        int index = indexOf(key);
+
+        _keys[index] = key;
+        _values[index] = oldValues[i];
+      }
+    }
+  }
+
+  private static int mix(int hash)
+  {
+    hash *= 0x9e3779b9;
+
+    return hash ^ (hash >>> 16);
+  }
+}
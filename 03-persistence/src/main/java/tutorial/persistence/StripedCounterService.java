@@ -0,0 +1,8 @@
+package tutorial.persistence;
+
+import io.baratine.core.Result;
+
+public interface StripedCounterService extends CounterService
+{
+  void getApprox(Result<Long> result);
+}
@@ -0,0 +1,157 @@
+package tutorial.persistence;
+
+import javax.inject.Inject;
+
+import io.baratine.core.Lookup;
+import io.baratine.core.OnInit;
+import io.baratine.core.Result;
+import io.baratine.core.Service;
+import io.baratine.core.ServiceManager;
+import io.baratine.core.ServiceRef;
+import io.baratine.store.Store;
+
+/**
+ * A counter whose increments are spread round-robin over N shard services.
+ * Each shard journals and applies its own increments on its own inbox.
+ *
+ * <p>Every call still passes through this front service's inbox, which only
+ * routes.  Striping takes the journal and the store writes off that inbox,
+ * but it doesn't remove the single queue in front of the shards.
+ *
+ * <p>{@link #get} asks every shard and sums the answers.  {@link #getApprox}
+ * sums the last value seen from each shard without leaving this service.
+ */
+@Service("public:///counter-striped")
+public class StripedCounterServiceImpl implements StripedCounterService
+{
+  private final int _shardCount;
+
+  private CounterService []_shards;
+  private long []_shardValues;
+  private int _next;
+
+  @Inject @Lookup("store:///counter-striped")
+  private ServiceRef _storeRef;
+
+  public StripedCounterServiceImpl()
+  {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public StripedCounterServiceImpl(int shardCount)
+  {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+    }
+
+    _shardCount = shardCount;
+  }
+
+  @OnInit
+  public void onInit(Result<Void> result)
+  {
+    ServiceManager manager = ServiceManager.current();
+
+    _shards = new CounterService[_shardCount];
+    _shardValues = new long[_shardCount];
+
+    for (int i = 0; i < _shardCount; i++) {
+      // give each shard its own partition of the Store
+      @SuppressWarnings("unchecked")
+      Store<byte[]> store = _storeRef.lookup("/" + i).as(Store.class);
+
+      _shards[i] = manager.newService()
+                          .address("public:///counter-striped-shard" + i)
+                          .service(new CounterShardImpl(store))
+                          .build()
+                          .as(CounterService.class);
+    }
+
+    result.complete(null);
+  }
+
+  public void get(Result<Long> result)
+  {
+    ShardSum sum = new ShardSum(result);
+
+    for (int i = 0; i < _shards.length; i++) {
+      final int shard = i;
+
+      _shards[i].get(sum.from(value -> sum.onShard(shard, value)));
+    }
+  }
+
+  public void getApprox(Result<Long> result)
+  {
+    result.complete(sumShardValues());
+  }
+
+  /**
+   * Returns the approximate total after this increment is applied.
+   * Increments still in flight on other shards may not be included.
+   */
+  public void addAndGet(long value, Result<Long> result)
+  {
+    int shard = _next;
+
+    _next = (_next + 1) % _shards.length;
+
+    _shards[shard].addAndGet(value, result.from(shardValue -> {
+      _shardValues[shard] = shardValue;
+
+      return sumShardValues();
+    }));
+  }
+
+  private long sumShardValues()
+  {
+    long sum = 0;
+
+    for (long value : _shardValues) {
+      sum += value;
+    }
+
+    return sum;
+  }
+
+  /**
+   * Joins the shard replies to a get().  Replies come back on this
+   * service's inbox, so the counters need no synchronization.
+   */
+  private class ShardSum implements Result<Long>
+  {
+    private final Result<Long> _result;
+    private int _pending = _shards.length;
+    private boolean _isFailed;
+
+    ShardSum(Result<Long> result)
+    {
+      _result = result;
+    }
+
+    Long onShard(int shard, long value)
+    {
+      _shardValues[shard] = value;
+
+      return value;
+    }
+
+    @Override
+    public void complete(Long value)
+    {
+      if (--_pending == 0 && ! _isFailed) {
+        _result.complete(sumShardValues());
+      }
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      if (! _isFailed) {
+        _isFailed = true;
+
+        _result.fail(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package tutorial.persistence;
+
+public interface StripedCounterServiceSync extends StripedCounterService
+{
+  long get();
+
+  long getApprox();
+
+  long addAndGet(long value);
+}
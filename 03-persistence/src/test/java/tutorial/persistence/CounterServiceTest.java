@@ -1,8 +1,22 @@
 package tutorial.persistence;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 
+import io.baratine.core.Journal;
 import io.baratine.core.Lookup;
+import io.baratine.core.ResultFuture;
+import io.baratine.core.Service;
+import io.baratine.core.ServiceRef;
+import io.baratine.store.Store;
 import tutorial.persistence.CounterServiceImpl;
 
 import org.junit.Assert;
@@ -13,13 +27,51 @@ import com.caucho.junit.ConfigurationBaratine;
 import com.caucho.junit.RunnerBaratine;
 
 @RunWith(RunnerBaratine.class)
-@ConfigurationBaratine(services = {CounterServiceImpl.class}, pod = "pod",
+@ConfigurationBaratine(services = {CounterServiceImpl.class, StripedCounterServiceImpl.class,
+                                   CombiningCounterServiceImpl.class,
+                                   KeyedCounterServiceImpl.class,
+                                   CounterServiceTest.CheckpointCounterServiceImpl.class,
+                                   CounterServiceTest.SmallBlockCounterServiceImpl.class,
+                                   CounterServiceTest.CoalescingCounterServiceImpl.class}, pod = "pod",
   logs = {@ConfigurationBaratine.Log(name = "com.caucho", level = "WARNING"),
           @ConfigurationBaratine.Log(name = "tutorial", level = "FINER")})
 public class CounterServiceTest
 {
   @Inject @Lookup("public:///counter")
-  private CounterServiceSync _service;
+  private RateCounterServiceSync _service;
+
+  @Inject @Lookup("public:///counter")
+  private ServiceRef _serviceRef;
+
+  @Inject @Lookup("public:///counter-striped")
+  private StripedCounterServiceSync _striped;
+
+  @Inject @Lookup("public:///counter-combining")
+  private CounterServiceSync _combining;
+
+  @Inject @Lookup("public:///counters")
+  private KeyedCounterServiceSync _counters;
+
+  @Inject @Lookup("public:///counters-small")
+  private KeyedCounterServiceSync _smallCounters;
+
+  @Inject @Lookup("public:///counters-small")
+  private ServiceRef _smallCountersRef;
+
+  @Inject @Lookup("public:///counter-coalescing")
+  private CounterServiceSync _coalescing;
+
+  @Inject @Lookup("public:///counter-coalescing")
+  private ServiceRef _coalescingRef;
+
+  @Inject @Lookup("store:///counter-coalescing")
+  private ServiceRef _coalescingStoreRef;
+
+  @Inject @Lookup("public:///counter-checkpoint")
+  private CounterServiceSync _checkpoint;
+
+  @Inject @Lookup("store:///counter-checkpoint")
+  private ServiceRef _checkpointStoreRef;
 
   @Inject
   private RunnerBaratine _testContext;
@@ -56,16 +108,385 @@ public class CounterServiceTest
     Assert.assertEquals(base + 333, _service.addAndGet(222));
     Assert.assertEquals(base + 666, _service.addAndGet(333));
 
-    //restartBaratine();
+    restartBaratine();
 
     Assert.assertEquals(base + 666, _service.get());
     Assert.assertEquals(base + 777, _service.addAndGet(111));
   }
 
+  @Test
+  public void testRestartAfterSkippedSave()
+    throws Exception
+  {
+    long base = _service.get();
+
+    _service.addAndGet(111);
+    save(_serviceRef);
+
+    // unchanged, so this save writes nothing and the journal still rolls
+    save(_serviceRef);
+
+    _service.addAndGet(222);
+
+    restartBaratine();
+
+    Assert.assertEquals(base + 333, _service.get());
+  }
+
+  @Test
+  public void testCoalescedSave()
+    throws Exception
+  {
+    long base = _coalescing.get();
+    long stored = getStored(_coalescingStoreRef);
+
+    int count = 6;
+    int writeCount = 0;
+
+    // a save after every modification, but only every third one writes
+    for (int i = 1; i <= count; i++) {
+      _coalescing.addAndGet(1);
+      save(_coalescingRef);
+
+      long value = getStored(_coalescingStoreRef);
+
+      if (value != stored) {
+        writeCount++;
+
+        Assert.assertEquals(0, i % 3);
+        Assert.assertEquals(base + i, value);
+      }
+
+      stored = value;
+    }
+
+    Assert.assertEquals(count / 3, writeCount);
+
+    restartBaratine();
+
+    Assert.assertEquals(base + count, _coalescing.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testJournalCantDeferSaves()
+  {
+    new JournaledCoalescingCounterServiceImpl();
+  }
+
+  private void save(ServiceRef ref)
+    throws Exception
+  {
+    ResultFuture<Boolean> future = new ResultFuture<>();
+    ref.save(future);
+    future.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testView()
+    throws Exception
+  {
+    long value = _service.addAndGet(111);
+
+    CounterView view = CounterView.lookup(_serviceRef.address());
+
+    Assert.assertNotNull(view);
+
+    // the view is published at the end of the batch, after the reply
+    for (int i = 0; i < 100 && view.get() != value; i++) {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(value, view.get());
+  }
+
+  @Test
+  public void testRate()
+    throws Exception
+  {
+    long base = _service.get();
+    long sum = _service.sumOver(CounterServiceImpl.WINDOW_SECONDS);
+
+    long now = System.currentTimeMillis();
+
+    Assert.assertEquals(base + 10, _service.addAt(10, now));
+    Assert.assertEquals(base + 15, _service.addAt(5, now));
+
+    // older than the window, so only the count sees it
+    Assert.assertEquals(base + 115, _service.addAt(100, now - 2000L * CounterServiceImpl.WINDOW_SECONDS));
+
+    // addAndGet() is not tracked by the window
+    _service.addAndGet(100);
+
+    Assert.assertEquals(sum + 15, _service.sumOver(CounterServiceImpl.WINDOW_SECONDS));
+    Assert.assertTrue(_service.rate(60) > 0);
+  }
+
+  @Test
+  public void testRateReplay()
+    throws Exception
+  {
+    long sum = _service.sumOver(CounterServiceImpl.WINDOW_SECONDS);
+
+    // recorded 60 seconds ago, only in the journal
+    _service.addAt(1000, System.currentTimeMillis() - 60000);
+
+    long recent = _service.sumOver(10);
+
+    Assert.assertEquals(sum + 1000, _service.sumOver(CounterServiceImpl.WINDOW_SECONDS));
+
+    restartBaratine();
+
+    // the replay puts it back in its own second, not the current one
+    Assert.assertEquals(sum + 1000, _service.sumOver(CounterServiceImpl.WINDOW_SECONDS));
+    Assert.assertTrue(_service.sumOver(10) <= recent);
+  }
+
+  @Test
+  public void testStriped()
+    throws Exception
+  {
+    long base = _striped.get();
+
+    for (int i = 0; i < 100; i++) {
+      _striped.addAndGet(1);
+    }
+
+    Assert.assertEquals(base + 100, _striped.get());
+    Assert.assertEquals(base + 100, _striped.getApprox());
+  }
+
+  @Test
+  public void testCombining()
+    throws Exception
+  {
+    long base = _combining.get();
+
+    Assert.assertEquals(base + 111, _combining.addAndGet(111));
+    Assert.assertEquals(base + 333, _combining.addAndGet(222));
+
+    int threadCount = 4;
+    int count = 100;
+
+    Set<Long> values = Collections.synchronizedSet(new HashSet<>());
+    Thread []threads = new Thread[threadCount];
+
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < count; j++) {
+          values.add(_combining.addAndGet(1));
+        }
+      });
+
+      threads[i].start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // every caller saw its own running value
+    Assert.assertEquals(threadCount * count, values.size());
+    Assert.assertEquals(base + 333 + threadCount * count, _combining.get());
+  }
+
+  @Test
+  public void testLongStoreEncoding()
+  {
+    long []values = { 0, 1, -1, 111, Long.MIN_VALUE, Long.MAX_VALUE };
+
+    for (long value : values) {
+      byte []data = LongStore.encode(value);
+
+      Assert.assertEquals(LongStore.VALUE_LENGTH, data.length);
+      Assert.assertEquals(value, LongStore.decode(data));
+    }
+  }
+
+  @Test
+  public void testLongStoreLegacy()
+  {
+    // counts written as a Long before the 8-byte format
+    Assert.assertEquals(111, LongStore.toLong(Long.valueOf(111)));
+    Assert.assertEquals(-1, LongStore.toLong(Long.valueOf(-1)));
+    Assert.assertEquals(111, LongStore.toLong(LongStore.encode(111)));
+  }
+
+  @Test
+  public void testKeyed()
+    throws Exception
+  {
+    long base = _counters.get("testKeyed.a");
+
+    Assert.assertEquals(base + 111, _counters.addAndGet("testKeyed.a", 111));
+    Assert.assertEquals(base + 333, _counters.addAndGet("testKeyed.a", 222));
+
+    _counters.addAndGet("testKeyed.b", 1);
+    _counters.addAndGet("testKeyedOther", 1);
+
+    long []values = _counters.getAll(Arrays.asList("testKeyed.a", "testKeyed.none"));
+
+    Assert.assertEquals(base + 333, values[0]);
+    Assert.assertEquals(0, values[1]);
+
+    Map<String,Long> scan = _counters.scan("testKeyed.");
+
+    Assert.assertEquals(Arrays.asList("testKeyed.a", "testKeyed.b"),
+                        new ArrayList<>(scan.keySet()));
+  }
+
+  @Test
+  public void testKeyedRestart()
+    throws Exception
+  {
+    List<String> keys = Arrays.asList("testKeyedRestart.a", "testKeyedRestart.b",
+                                      "testKeyedRestart.c", "testKeyedRestart.d",
+                                      "testKeyedRestart.e");
+
+    long []base = _smallCounters.getAll(keys);
+
+    for (String key : keys) {
+      _smallCounters.addAndGet(key, 1);
+    }
+
+    // writes a snapshot of three blocks
+    save(_smallCountersRef);
+
+    // only in the journal
+    _smallCounters.addAndGet("testKeyedRestart.a", 10);
+
+    restartBaratine();
+
+    long []values = _smallCounters.getAll(keys);
+
+    Assert.assertEquals(base[0] + 11, values[0]);
+
+    for (int i = 1; i < keys.size(); i++) {
+      Assert.assertEquals(base[i] + 1, values[i]);
+    }
+  }
+
+  @Test
+  public void testKeyedOverlappingSaves()
+    throws Exception
+  {
+    List<String> keys = Arrays.asList("testKeyedOverlappingSaves.a",
+                                      "testKeyedOverlappingSaves.b",
+                                      "testKeyedOverlappingSaves.c");
+
+    long []base = _smallCounters.getAll(keys);
+
+    _smallCounters.addAndGet(keys.get(0), 1);
+    _smallCounters.addAndGet(keys.get(1), 1);
+
+    // the second save arrives while the first is in flight
+    ResultFuture<Boolean> first = new ResultFuture<>();
+    _smallCountersRef.save(first);
+
+    _smallCounters.addAndGet(keys.get(2), 1);
+
+    ResultFuture<Boolean> second = new ResultFuture<>();
+    _smallCountersRef.save(second);
+
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+
+    restartBaratine();
+
+    long []values = _smallCounters.getAll(keys);
+
+    for (int i = 0; i < keys.size(); i++) {
+      Assert.assertEquals(base[i] + 1, values[i]);
+    }
+  }
+
+  @Test
+  public void testRestartAfterCheckpoint()
+    throws Exception
+  {
+    long base = _checkpoint.get();
+
+    for (int i = 0; i < 25; i++) {
+      _checkpoint.addAndGet(1);
+    }
+
+    // the threshold of 10 requested a checkpoint without an explicit save;
+    // it completes after the batch, so wait for it to reach the store
+    long stored = getStored(_checkpointStoreRef);
+
+    for (int i = 0; i < 100 && stored < base + 10; i++) {
+      Thread.sleep(10);
+
+      stored = getStored(_checkpointStoreRef);
+    }
+
+    Assert.assertTrue("stored " + stored + " base " + base, base + 10 <= stored);
+
+    restartBaratine();
+
+    Assert.assertEquals(base + 25, _checkpoint.get());
+    Assert.assertEquals(base + 26, _checkpoint.addAndGet(1));
+  }
+
+  /**
+   * Reads the count a counter last saved, or -1 if it never saved one.
+   */
+  private long getStored(ServiceRef storeRef)
+    throws Exception
+  {
+    @SuppressWarnings("unchecked")
+    Store<Object> store = storeRef.as(Store.class);
+
+    ResultFuture<Object> future = new ResultFuture<>();
+    store.get("count", future);
+
+    Object value = future.get(10, TimeUnit.SECONDS);
+
+    return value != null ? LongStore.toLong(value) : -1;
+  }
+
   private void restartBaratine()
     throws Exception
   {
     _testContext.closeImmediate();
     _testContext.start();
   }
+
+  @Journal
+  @Service("public:///counter-checkpoint")
+  public static class CheckpointCounterServiceImpl extends CounterServiceImpl
+  {
+    public CheckpointCounterServiceImpl()
+    {
+      super("store:///counter-checkpoint", 0, 1, 10);
+    }
+  }
+
+  @Journal
+  @Service("public:///counters-small")
+  public static class SmallBlockCounterServiceImpl extends KeyedCounterServiceImpl
+  {
+    public SmallBlockCounterServiceImpl()
+    {
+      super("store:///counters-small", 2);
+    }
+  }
+
+  // no @Journal, so it may defer saves
+  @Service("public:///counter-coalescing")
+  public static class CoalescingCounterServiceImpl extends CounterServiceImpl
+  {
+    public CoalescingCounterServiceImpl()
+    {
+      super("store:///counter-coalescing", Long.MAX_VALUE, 3, 0);
+    }
+  }
+
+  @Journal
+  public static class JournaledCoalescingCounterServiceImpl extends CounterServiceImpl
+  {
+    public JournaledCoalescingCounterServiceImpl()
+    {
+      super(0, 3);
+    }
+  }
 }
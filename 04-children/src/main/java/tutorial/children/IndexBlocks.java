@@ -0,0 +1,482 @@
+package tutorial.children;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.baratine.core.Result;
+import io.baratine.store.Store;
+
+/**
+ * A sorted set of strings, saved to a {@code Store} as blocks of adjacent
+ * entries.  Each block holds the entries from its start key up to the next
+ * block's start key, so an insert or remove only changes the block it falls
+ * in, and a save writes only the blocks changed since the last save.
+ *
+ * <p>A save writes each changed block under a new key, {@code <name>/<id>},
+ * and then writes {@code <name>/directory}, which lists every block's start
+ * key and id.  The directory is the commit point: until it is written, a load
+ * still sees the previous save.  Blocks the new directory no longer lists are
+ * removed after it is written.
+ *
+ * <p>Like the rest of a service's state, it must only be used from its owning
+ * service's thread.
+ */
+public class IndexBlocks
+{
+  private static final Logger log = Logger.getLogger(IndexBlocks.class.getName());
+
+  private final String _name;
+  private final int _blockSize;
+
+  private final TreeSet<String> _entries = new TreeSet<>();
+
+  // blocks by start key; the first block starts at ""
+  private final TreeMap<String,Block> _blocks = new TreeMap<>();
+
+  // ids of the blocks in the last saved directory
+  private HashSet<Integer> _savedIds = new HashSet<>();
+  private int _nextId;
+
+  private boolean _isDirty;
+
+  public IndexBlocks(String name, int blockSize)
+  {
+    if (blockSize < 2) {
+      throw new IllegalArgumentException("blockSize must be at least 2: " + blockSize);
+    }
+
+    _name = name;
+    _blockSize = blockSize;
+
+    _blocks.put("", new Block());
+  }
+
+  /**
+   * Returns the entries from {@code from} on, in order.
+   */
+  public NavigableSet<String> tailSet(String from)
+  {
+    return _entries.tailSet(from, true);
+  }
+
+  public int getBlockCount()
+  {
+    return _blocks.size();
+  }
+
+  public void add(String entry)
+  {
+    if (! _entries.add(entry)) {
+      return;
+    }
+
+    Map.Entry<String,Block> floor = _blocks.floorEntry(entry);
+    Block block = floor.getValue();
+
+    block._count++;
+    block._isDirty = true;
+    _isDirty = true;
+
+    if (_blockSize < block._count) {
+      split(floor.getKey(), block);
+    }
+  }
+
+  public void remove(String entry)
+  {
+    if (! _entries.remove(entry)) {
+      return;
+    }
+
+    Map.Entry<String,Block> floor = _blocks.floorEntry(entry);
+    Block block = floor.getValue();
+
+    block._count--;
+    block._isDirty = true;
+    _isDirty = true;
+
+    if (block._count == 0 && ! floor.getKey().isEmpty()) {
+      // its range joins the previous block, which gains no entries
+      _blocks.remove(floor.getKey());
+    }
+  }
+
+  /**
+   * Moves the upper half of a full block into a new block.
+   */
+  private void split(String start, Block block)
+  {
+    int half = block._count / 2;
+
+    Iterator<String> iter = range(start).iterator();
+
+    for (int i = 0; i < half; i++) {
+      iter.next();
+    }
+
+    Block upper = new Block();
+    upper._count = block._count - half;
+    upper._isDirty = true;
+
+    block._count = half;
+
+    _blocks.put(iter.next(), upper);
+  }
+
+  private NavigableSet<String> range(String start)
+  {
+    String end = _blocks.higherKey(start);
+
+    if (end != null) {
+      return _entries.subSet(start, true, end, false);
+    }
+    else {
+      return _entries.tailSet(start, true);
+    }
+  }
+
+  public void load(Store<byte[]> store, Result<Void> result)
+  {
+    store.get(_name + "/directory", new Result<byte[]>() {
+      @Override
+      public void complete(byte []directory)
+      {
+        if (directory == null) {
+          result.complete(null);
+
+          return;
+        }
+
+        ArrayList<Block> blocks = decodeDirectory(directory);
+
+        loadBlock(store, blocks, 0, result);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        result.fail(e);
+      }
+    });
+  }
+
+  private void loadBlock(Store<byte[]> store,
+                         ArrayList<Block> blocks,
+                         int index,
+                         Result<Void> result)
+  {
+    if (blocks.size() <= index) {
+      result.complete(null);
+
+      return;
+    }
+
+    Block block = blocks.get(index);
+
+    store.get(blockKey(block._id), new Result<byte[]>() {
+      @Override
+      public void complete(byte []data)
+      {
+        if (data == null) {
+          result.fail(new IllegalStateException("missing index block " + blockKey(block._id)));
+
+          return;
+        }
+
+        block._count = decodeBlock(data);
+
+        loadBlock(store, blocks, index + 1, result);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        result.fail(e);
+      }
+    });
+  }
+
+  public void save(Store<byte[]> store, Result<Void> result)
+  {
+    if (! _isDirty) {
+      result.complete(null);
+
+      return;
+    }
+
+    _isDirty = false;
+
+    ArrayList<Block> written = new ArrayList<>();
+    ArrayList<byte[]> data = new ArrayList<>();
+
+    for (Map.Entry<String,Block> entry : _blocks.entrySet()) {
+      Block block = entry.getValue();
+
+      if (block._isDirty) {
+        block._isDirty = false;
+        block._id = ++_nextId;
+
+        written.add(block);
+        data.add(encodeBlock(range(entry.getKey())));
+      }
+    }
+
+    byte []directory = encodeDirectory();
+    HashSet<Integer> ids = new HashSet<>();
+
+    for (Block block : _blocks.values()) {
+      ids.add(block._id);
+    }
+
+    Result<Void> blocksResult = new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        saveDirectory(store, directory, ids, written, result);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        onSaveFailed(written);
+
+        result.fail(e);
+      }
+    };
+
+    if (written.isEmpty()) {
+      blocksResult.complete(null);
+
+      return;
+    }
+
+    SaveJoin join = new SaveJoin(written.size(), blocksResult);
+
+    for (int i = 0; i < written.size(); i++) {
+      store.put(blockKey(written.get(i)._id), data.get(i), join);
+    }
+  }
+
+  private void saveDirectory(Store<byte[]> store,
+                             byte []directory,
+                             HashSet<Integer> ids,
+                             ArrayList<Block> written,
+                             Result<Void> result)
+  {
+    store.put(_name + "/directory", directory, new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        onSaveComplete(store, ids);
+
+        result.complete(null);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        onSaveFailed(written);
+
+        result.fail(e);
+      }
+    });
+  }
+
+  private void onSaveComplete(Store<byte[]> store, HashSet<Integer> ids)
+  {
+    for (Integer id : _savedIds) {
+      if (ids.contains(id)) {
+        continue;
+      }
+
+      String key = blockKey(id);
+
+      // no directory lists it any more, so failing to remove it only
+      // leaves garbage
+      store.remove(key, new Result<Void>() {
+        @Override
+        public void complete(Void value)
+        {
+        }
+
+        @Override
+        public void fail(Throwable e)
+        {
+          log.log(Level.FINE, "failed to remove " + key, e);
+        }
+      });
+    }
+
+    _savedIds = ids;
+  }
+
+  private void onSaveFailed(ArrayList<Block> written)
+  {
+    // the last saved directory is still the current one, so write them again
+    for (Block block : written) {
+      block._isDirty = true;
+    }
+
+    _isDirty = true;
+  }
+
+  private String blockKey(int id)
+  {
+    return _name + "/" + id;
+  }
+
+  private byte []encodeDirectory()
+  {
+    ArrayList<byte[]> starts = new ArrayList<>();
+    int length = 8;
+
+    for (String start : _blocks.keySet()) {
+      byte []bytes = start.getBytes(StandardCharsets.UTF_8);
+
+      starts.add(bytes);
+      length += 4 + bytes.length + 4;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+
+    buffer.putInt(_nextId);
+    buffer.putInt(_blocks.size());
+
+    int i = 0;
+
+    for (Block block : _blocks.values()) {
+      byte []start = starts.get(i++);
+
+      buffer.putInt(start.length);
+      buffer.put(start);
+      buffer.putInt(block._id);
+    }
+
+    return buffer.array();
+  }
+
+  private ArrayList<Block> decodeDirectory(byte []data)
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+
+    _nextId = buffer.getInt();
+
+    int count = buffer.getInt();
+
+    ArrayList<Block> blocks = new ArrayList<>();
+
+    _blocks.clear();
+    _savedIds.clear();
+
+    for (int i = 0; i < count; i++) {
+      int length = buffer.getInt();
+      String start = new String(data, buffer.position(), length, StandardCharsets.UTF_8);
+
+      buffer.position(buffer.position() + length);
+
+      Block block = new Block();
+      block._id = buffer.getInt();
+
+      _blocks.put(start, block);
+      _savedIds.add(block._id);
+      blocks.add(block);
+    }
+
+    return blocks;
+  }
+
+  private static byte []encodeBlock(NavigableSet<String> range)
+  {
+    ArrayList<byte[]> entries = new ArrayList<>();
+    int length = 4;
+
+    for (String entry : range) {
+      byte []bytes = entry.getBytes(StandardCharsets.UTF_8);
+
+      entries.add(bytes);
+      length += 4 + bytes.length;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+
+    buffer.putInt(entries.size());
+
+    for (byte []entry : entries) {
+      buffer.putInt(entry.length);
+      buffer.put(entry);
+    }
+
+    return buffer.array();
+  }
+
+  /**
+   * Adds the block's entries, returning how many there were.
+   */
+  private int decodeBlock(byte []data)
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+
+    int count = buffer.getInt();
+
+    for (int i = 0; i < count; i++) {
+      int length = buffer.getInt();
+
+      _entries.add(new String(data, buffer.position(), length, StandardCharsets.UTF_8));
+
+      buffer.position(buffer.position() + length);
+    }
+
+    return count;
+  }
+
+  private static class Block
+  {
+    // id of its last written version, or 0 if it has never been written
+    private int _id;
+    private int _count;
+    private boolean _isDirty;
+  }
+
+  /**
+   * Completes once every block write has completed.
+   */
+  private static class SaveJoin implements Result<Void>
+  {
+    private final Result<Void> _result;
+    private int _pending;
+    private boolean _isFailed;
+
+    SaveJoin(int pending, Result<Void> result)
+    {
+      _pending = pending;
+      _result = result;
+    }
+
+    @Override
+    public void complete(Void value)
+    {
+      if (--_pending == 0 && ! _isFailed) {
+        _result.complete(null);
+      }
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      if (! _isFailed) {
+        _isFailed = true;
+
+        _result.fail(e);
+      }
+    }
+  }
+}
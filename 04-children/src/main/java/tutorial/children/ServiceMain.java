@@ -22,7 +22,7 @@ public class ServiceMain
 
       ServiceRef ref = manager.newService()
                               .address("public:///user")
-                              .service(new UserServiceImpl())
+                              .service(new UserManagerImpl())
                               .build();
 
       ServiceRef child = ref.lookup("/john");
@@ -0,0 +1,163 @@
+package tutorial.children;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Tracks which children hold their {@code User} in memory, in LRU order.
+ * When more than {@code capacity} children are loaded, the least recently
+ * used ones are unloaded: they save if dirty, drop their {@code User}, and
+ * reload it from the store on their next call.
+ *
+ * <p>The cache also remembers a bounded set of URLs whose {@code User} is
+ * known not to exist.  Every write to a user goes through its child, which
+ * keeps the set exact, so such a child can skip its store read.  A URL is
+ * only known once its first read has missed, so the set doesn't help with
+ * ids that have never been asked for.
+ *
+ * <p>Children share the parent's inbox, so the cache is only ever used from
+ * one thread.
+ */
+public class UserCache
+{
+  private final int _capacity;
+
+  private final LinkedHashMap<String,UserServiceImpl> _loaded
+    = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final int _absentCapacity;
+
+  private final LinkedHashMap<String,Boolean> _absent
+    = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long _hits;
+  private long _misses;
+  private long _evictions;
+  private long _absentHits;
+
+  UserCache(int capacity, int absentCapacity)
+  {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+
+    if (absentCapacity < 0) {
+      throw new IllegalArgumentException("absentCapacity must not be negative: " + absentCapacity);
+    }
+
+    _capacity = capacity;
+    _absentCapacity = absentCapacity;
+  }
+
+  /**
+   * Called when a loaded child is used.
+   */
+  void hit(UserServiceImpl child)
+  {
+    _hits++;
+
+    if (_loaded.get(child.getUrl()) == null) {
+      // used again while its unload was still writing
+      add(child);
+    }
+  }
+
+  /**
+   * Called when a child has loaded its {@code User} from the store.
+   */
+  void loaded(UserServiceImpl child)
+  {
+    _misses++;
+
+    add(child);
+  }
+
+  /**
+   * Called when an unloading child failed to write its {@code User} and is
+   * keeping it in memory.
+   */
+  void reload(UserServiceImpl child)
+  {
+    add(child);
+  }
+
+  boolean isLoaded(UserServiceImpl child)
+  {
+    return _loaded.containsKey(child.getUrl());
+  }
+
+  private void add(UserServiceImpl child)
+  {
+    _loaded.put(child.getUrl(), child);
+
+    Iterator<UserServiceImpl> iter = _loaded.values().iterator();
+
+    while (_capacity < _loaded.size() && iter.hasNext()) {
+      UserServiceImpl eldest = iter.next();
+
+      if (eldest == child) {
+        continue;
+      }
+
+      iter.remove();
+      _evictions++;
+
+      eldest.unload();
+    }
+  }
+
+  /**
+   * Returns true if the child at {@code url} is known to have no user.
+   */
+  boolean isAbsent(String url)
+  {
+    if (_absent.get(url) != null) {
+      _absentHits++;
+
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Records whether the child at {@code url} has a user, after a load from the
+   * store or a set().
+   */
+  void setAbsent(String url, boolean isAbsent)
+  {
+    if (! isAbsent) {
+      _absent.remove(url);
+
+      return;
+    }
+
+    if (_absentCapacity == 0) {
+      return;
+    }
+
+    _absent.put(url, Boolean.TRUE);
+
+    if (_absentCapacity < _absent.size()) {
+      Iterator<String> iter = _absent.keySet().iterator();
+
+      iter.next();
+      iter.remove();
+    }
+  }
+
+  /**
+   * Called when Baratine destroys a child.
+   */
+  void remove(UserServiceImpl child)
+  {
+    _loaded.remove(child.getUrl(), child);
+  }
+
+  UserCacheStats getStats(UserStore store)
+  {
+    return new UserCacheStats(_loaded.size(), _capacity, _hits, _misses, _evictions,
+                              _absent.size(), _absentHits,
+                              store.getFlushCount(), store.getWriteCount());
+  }
+}
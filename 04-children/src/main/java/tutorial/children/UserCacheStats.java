@@ -0,0 +1,103 @@
+package tutorial.children;
+
+public class UserCacheStats
+{
+  private int _size;
+  private int _capacity;
+  private long _hits;
+  private long _misses;
+  private long _evictions;
+  private int _absentSize;
+  private long _absentHits;
+  private long _flushes;
+  private long _writes;
+
+  public UserCacheStats(int size,
+                        int capacity,
+                        long hits,
+                        long misses,
+                        long evictions,
+                        int absentSize,
+                        long absentHits,
+                        long flushes,
+                        long writes)
+  {
+    _size = size;
+    _capacity = capacity;
+    _hits = hits;
+    _misses = misses;
+    _evictions = evictions;
+    _absentSize = absentSize;
+    _absentHits = absentHits;
+    _flushes = flushes;
+    _writes = writes;
+  }
+
+  public int getSize()
+  {
+    return _size;
+  }
+
+  public int getCapacity()
+  {
+    return _capacity;
+  }
+
+  public long getHits()
+  {
+    return _hits;
+  }
+
+  public long getMisses()
+  {
+    return _misses;
+  }
+
+  public long getEvictions()
+  {
+    return _evictions;
+  }
+
+  /**
+   * Returns the number of URLs known to have no user.
+   */
+  public int getAbsentSize()
+  {
+    return _absentSize;
+  }
+
+  /**
+   * Returns how many store reads or child lookups were skipped because the
+   * user was known not to exist.
+   */
+  public long getAbsentHits()
+  {
+    return _absentHits;
+  }
+
+  /**
+   * Returns the number of grouped writes of the dirty children.
+   */
+  public long getFlushes()
+  {
+    return _flushes;
+  }
+
+  /**
+   * Returns the number of users written to the store.
+   */
+  public long getWrites()
+  {
+    return _writes;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[size=" + _size + "/" + _capacity
+           + ", hits=" + _hits + ", misses=" + _misses
+           + ", evictions=" + _evictions
+           + ", absent=" + _absentSize + ", absentHits=" + _absentHits
+           + ", flushes=" + _flushes + ", writes=" + _writes + "]";
+  }
+}
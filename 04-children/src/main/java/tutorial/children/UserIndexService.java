@@ -0,0 +1,17 @@
+package tutorial.children;
+
+import io.baratine.core.Result;
+import io.baratine.core.ResultStream;
+
+public interface UserIndexService
+{
+  void update(String id, User oldUser, User newUser, Result<Void> result);
+
+  void findByLast(String last, ResultStream<String> result);
+
+  void findByLastPrefix(String prefix, ResultStream<String> result);
+
+  void findByFirst(String first, ResultStream<String> result);
+
+  void findByFirstPrefix(String prefix, ResultStream<String> result);
+}
@@ -0,0 +1,187 @@
+package tutorial.children;
+
+import io.baratine.core.Journal;
+import io.baratine.core.Modify;
+import io.baratine.core.OnLoad;
+import io.baratine.core.OnSave;
+import io.baratine.core.Result;
+import io.baratine.core.ResultStream;
+import io.baratine.core.Service;
+import io.baratine.core.ServiceManager;
+import io.baratine.store.Store;
+
+/**
+ * Secondary indexes from a user's last and first name to the user's id, kept
+ * up to date by {@link UserServiceImpl#set}.
+ *
+ * <p>Each index is a sorted set of {@code value + '\0' + id} entries, so an
+ * exact or prefix query is a range scan.  The sets are saved as
+ * {@link IndexBlocks} of up to {@link #BLOCK_SIZE} entries, and a save only
+ * writes the blocks that changed.
+ *
+ * <p>Each index commits its save on its own.  An update only adds and removes
+ * exact entries, so a journal replayed over a save that got further than the
+ * journal expects ends in the same state.
+ */
+@Journal
+@Service("public:///user-index")
+public class UserIndexServiceImpl implements UserIndexService
+{
+  public static final int BLOCK_SIZE = 1024;
+
+  private static final char SEPARATOR = '\0';
+
+  private final String _storeAddress;
+
+  private final IndexBlocks _byLast;
+  private final IndexBlocks _byFirst;
+
+  private Store<byte[]> _store;
+
+  public UserIndexServiceImpl()
+  {
+    this("store:///user-index", BLOCK_SIZE);
+  }
+
+  public UserIndexServiceImpl(String storeAddress, int blockSize)
+  {
+    _storeAddress = storeAddress;
+
+    _byLast = new IndexBlocks("last", blockSize);
+    _byFirst = new IndexBlocks("first", blockSize);
+  }
+
+  @Modify
+  public void update(String id, User oldUser, User newUser, Result<Void> result)
+  {
+    if (oldUser != null) {
+      remove(_byLast, oldUser.getLast(), id);
+      remove(_byFirst, oldUser.getFirst(), id);
+    }
+
+    if (newUser != null) {
+      add(_byLast, newUser.getLast(), id);
+      add(_byFirst, newUser.getFirst(), id);
+    }
+
+    result.complete(null);
+  }
+
+  public void findByLast(String last, ResultStream<String> result)
+  {
+    find(_byLast, last + SEPARATOR, result);
+  }
+
+  public void findByLastPrefix(String prefix, ResultStream<String> result)
+  {
+    find(_byLast, prefix, result);
+  }
+
+  public void findByFirst(String first, ResultStream<String> result)
+  {
+    find(_byFirst, first + SEPARATOR, result);
+  }
+
+  public void findByFirstPrefix(String prefix, ResultStream<String> result)
+  {
+    find(_byFirst, prefix, result);
+  }
+
+  private static void add(IndexBlocks index, String value, String id)
+  {
+    if (value != null) {
+      index.add(value + SEPARATOR + id);
+    }
+  }
+
+  private static void remove(IndexBlocks index, String value, String id)
+  {
+    if (value != null) {
+      index.remove(value + SEPARATOR + id);
+    }
+  }
+
+  /**
+   * Streams the id of every entry starting with {@code prefix}, in order.
+   */
+  private static void find(IndexBlocks index,
+                           String prefix,
+                           ResultStream<String> result)
+  {
+    for (String entry : index.tailSet(prefix)) {
+      if (! entry.startsWith(prefix)) {
+        break;
+      }
+
+      result.accept(entry.substring(entry.indexOf(SEPARATOR) + 1));
+    }
+
+    result.complete();
+  }
+
+  @OnLoad
+  public void onLoad(Result<Void> result)
+  {
+    @SuppressWarnings("unchecked")
+    Store<byte[]> store = ServiceManager.current().lookup(_storeAddress).as(Store.class);
+
+    _store = store;
+
+    _byLast.load(_store, new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        _byFirst.load(_store, result);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        result.fail(e);
+      }
+    });
+  }
+
+  @OnSave
+  public void onSave(Result<Void> result)
+  {
+    SaveJoin join = new SaveJoin(2, result);
+
+    _byLast.save(_store, join);
+    _byFirst.save(_store, join);
+  }
+
+  /**
+   * Completes the save once both indexes have saved.
+   */
+  private static class SaveJoin implements Result<Void>
+  {
+    private final Result<Void> _result;
+    private int _pending;
+    private boolean _isFailed;
+
+    SaveJoin(int pending, Result<Void> result)
+    {
+      _pending = pending;
+      _result = result;
+    }
+
+    @Override
+    public void complete(Void value)
+    {
+      if (--_pending == 0 && ! _isFailed) {
+        _result.complete(null);
+      }
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      if (! _isFailed) {
+        _isFailed = true;
+
+        _result.fail(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package tutorial.children;
+
+import java.util.List;
+import java.util.Map;
+
+import io.baratine.core.Result;
+
+public interface UserManager
+{
+  void getAll(List<String> ids, Result<Map<String,User>> result);
+
+  void getCacheStats(Result<UserCacheStats> result);
+}
@@ -0,0 +1,175 @@
+package tutorial.children;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import io.baratine.core.Journal;
+import io.baratine.core.Lookup;
+import io.baratine.core.OnActive;
+import io.baratine.core.OnLookup;
+import io.baratine.core.OnSave;
+import io.baratine.core.Result;
+import io.baratine.core.Service;
+import io.baratine.core.ServiceManager;
+import io.baratine.core.ServiceRef;
+
+@Journal
+@Service("public:///user")
+public class UserManagerImpl implements UserManager
+{
+  public static final int DEFAULT_CAPACITY = 100000;
+  public static final int DEFAULT_ABSENT_CAPACITY = 100000;
+
+  private final String _storeAddress;
+  private UserStore _store;
+
+  @Inject @Lookup("public:///user-index")
+  private UserIndexService _index;
+
+  private final UserCache _cache;
+
+
+  public UserManagerImpl()
+  {
+    this(DEFAULT_CAPACITY, DEFAULT_ABSENT_CAPACITY);
+  }
+
+  /**
+   * At most {@code capacity} children keep their {@code User} in memory, and
+   * up to {@code absentCapacity} URLs without a user are remembered so their
+   * lookups skip the store.
+   */
+  public UserManagerImpl(int capacity, int absentCapacity)
+  {
+    this("store:///user", capacity, absentCapacity);
+  }
+
+  /**
+   * Keeps the users under {@code storeAddress}, so that subclasses running
+   * at other addresses don't share them.
+   */
+  public UserManagerImpl(String storeAddress, int capacity, int absentCapacity)
+  {
+    _storeAddress = storeAddress;
+    _cache = new UserCache(capacity, absentCapacity);
+  }
+
+  @OnLookup
+  public UserServiceImpl onLookup(String url)
+  {
+    return new UserServiceImpl(url, getStore(), _cache, _index);
+  }
+
+  private UserStore getStore()
+  {
+    if (_store == null) {
+      _store = new UserStore(ServiceManager.current().lookup(_storeAddress));
+    }
+
+    return _store;
+  }
+
+  /**
+   * Writes every dirty child together, so the checkpoint doesn't depend on
+   * which children Baratine asks to save.
+   */
+  @OnSave
+  public void onSave(Result<Void> result)
+  {
+    getStore().saveAll(result);
+  }
+
+  /**
+   * Gets the users with the given ids, for example {@code "john"} for
+   * {@code /user/john}.  All of the children are asked at once and their
+   * loads from the store overlap.  Ids without a user are left out of the
+   * map, and ids known to have no user are not looked up at all.
+   */
+  public void getAll(List<String> ids, Result<Map<String,User>> result)
+  {
+    if (ids.isEmpty()) {
+      result.complete(new HashMap<>());
+
+      return;
+    }
+
+    ServiceRef self = ServiceRef.current();
+    GetAllJoin join = new GetAllJoin(ids.size(), result);
+
+    for (String id : ids) {
+      String url = "/" + id;
+
+      // known to have no user: don't activate the child at all
+      if (_cache.isAbsent(url)) {
+        join.add(id).complete(null);
+
+        continue;
+      }
+
+      UserService child = self.lookup(url).as(UserService.class);
+
+      child.get(join.add(id));
+    }
+  }
+
+  public void getCacheStats(Result<UserCacheStats> result)
+  {
+    result.complete(_cache.getStats(getStore()));
+  }
+
+  @OnActive
+  public void onActive(Result<Void> result)
+  {
+    System.out.println("user service is now active");
+
+    result.complete(null);
+  }
+
+  /**
+   * Collects the children's replies to a getAll().  Replies come back on this
+   * service's inbox, so no synchronization is needed.
+   */
+  private static class GetAllJoin
+  {
+    private final Result<Map<String,User>> _result;
+    private final Map<String,User> _users = new HashMap<>();
+    private int _pending;
+    private boolean _isFailed;
+
+    GetAllJoin(int pending, Result<Map<String,User>> result)
+    {
+      _pending = pending;
+      _result = result;
+    }
+
+    Result<User> add(String id)
+    {
+      return new Result<User>() {
+        @Override
+        public void complete(User user)
+        {
+          if (user != null) {
+            _users.put(id, user);
+          }
+
+          if (--_pending == 0 && ! _isFailed) {
+            _result.complete(_users);
+          }
+        }
+
+        @Override
+        public void fail(Throwable e)
+        {
+          if (! _isFailed) {
+            _isFailed = true;
+
+            _result.fail(e);
+          }
+        }
+      };
+    }
+  }
+}
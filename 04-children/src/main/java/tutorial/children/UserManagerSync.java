@@ -0,0 +1,11 @@
+package tutorial.children;
+
+import java.util.List;
+import java.util.Map;
+
+public interface UserManagerSync extends UserManager
+{
+  Map<String,User> getAll(List<String> ids);
+
+  UserCacheStats getCacheStats();
+}
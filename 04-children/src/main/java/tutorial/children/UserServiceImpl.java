@@ -1,68 +1,324 @@
 package tutorial.children;
 
-import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import io.baratine.core.Journal;
-import io.baratine.core.Lookup;
 import io.baratine.core.Modify;
-import io.baratine.core.OnActive;
+import io.baratine.core.OnDestroy;
 import io.baratine.core.OnLoad;
 import io.baratine.core.OnSave;
 import io.baratine.core.Result;
-import io.baratine.core.Service;
-import io.baratine.store.Store;
+import io.baratine.core.ServiceRef;
 
-@Journal
-@Service("public:///user")
-public class UserServiceImpl
+public class UserServiceImpl implements UserService
 {
+  private static final Logger log = Logger.getLogger(UserServiceImpl.class.getName());
+
+  private final String _url;
+  private final UserStore _store;
+  private final UserCache _cache;
+  private final UserIndexService _index;
+
   private User _user;
+  private boolean _isLoaded;
+
+  // get() calls waiting for a load from the store
+  private ArrayList<Result<User>> _loadWaiters;
+
+  // modifications so far, and how many of them the latest completed write
+  // covered; the parent's journal is truncated after every checkpoint, so a
+  // modified user is always written
+  private int _modifyCount;
+  private int _writeCount;
+
+  private String _address;
+  private UserView _view;
+
+  public UserServiceImpl(String url,
+                         UserStore store,
+                         UserCache cache,
+                         UserIndexService index)
+  {
+    _url = url;
+    _store = store;
+    _cache = cache;
+    _index = index;
+  }
+
+  String getUrl()
+  {
+    return _url;
+  }
 
-  @Inject @Lookup("store:///user")
-  private Store<User> _store;
+  User getUser()
+  {
+    return _user;
+  }
+
+  int getModifyCount()
+  {
+    return _modifyCount;
+  }
 
   public void get(Result<User> result)
   {
-    result.complete(_user);
+    if (_isLoaded) {
+      _cache.hit(this);
+
+      result.complete(_user);
+    }
+    else {
+      load(result);
+    }
   }
 
+  /**
+   * Completes once the name index has the new user too.
+   */
   @Modify
   public void set(User user, Result<Boolean> result)
   {
+    if (_isLoaded) {
+      _cache.hit(this);
+
+      update(user, result);
+    }
+    else {
+      // the index needs the old user to remove its entries
+      load(new Result<User>() {
+        @Override
+        public void complete(User oldUser)
+        {
+          update(user, result);
+        }
+
+        @Override
+        public void fail(Throwable e)
+        {
+          result.fail(e);
+        }
+      });
+    }
+  }
+
+  private void update(User user, Result<Boolean> result)
+  {
+    _index.update(_url, _user, user, result.from(v -> true));
+    _cache.setAbsent(_url, user == null);
+
     _user = user;
+    _modifyCount++;
+    _store.modified(this);
 
-    result.complete(true);
+    _view.publish(user);
   }
 
   @OnLoad
   public void onLoad(Result<Void> result)
   {
-    _store.get("user", result.from(value -> onLoadComplete(value)));
+    _address = ServiceRef.current().address();
+
+    load(result.from(user -> null));
+  }
+
+  private void load(Result<User> result)
+  {
+    if (_loadWaiters != null) {
+      _loadWaiters.add(result);
+
+      return;
+    }
+
+    if (_cache.isAbsent(_url)) {
+      onLoadComplete(null);
+
+      result.complete(null);
+
+      return;
+    }
+
+    _loadWaiters = new ArrayList<>();
+    _loadWaiters.add(result);
+
+    _store.get(_url, new Result<User>() {
+      @Override
+      public void complete(User user)
+      {
+        if (user != null) {
+          onStoreLoad(user, false);
+        }
+        else {
+          loadLegacy();
+        }
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        onStoreLoadFailed(e);
+      }
+    });
+  }
+
+  /**
+   * Loads a user saved before the parent's {@code UserStore} layout.
+   */
+  private void loadLegacy()
+  {
+    _store.getLegacy(_url, new Result<User>() {
+      @Override
+      public void complete(User user)
+      {
+        onStoreLoad(user, user != null);
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        onStoreLoadFailed(e);
+      }
+    });
+  }
+
+  private void onStoreLoad(User user, boolean isLegacy)
+  {
+    ArrayList<Result<User>> waiters = _loadWaiters;
+    _loadWaiters = null;
+
+    _cache.setAbsent(_url, user == null);
+
+    onLoadComplete(user);
+
+    if (isLegacy) {
+      // users in the current layout were indexed by their set(), but a legacy
+      // one may predate the index.  The next save moves it to the current
+      // layout, so it is only indexed here once.
+      _index.update(_url, null, user, new Result<Void>() {
+        @Override
+        public void complete(Void value)
+        {
+        }
+
+        @Override
+        public void fail(Throwable e)
+        {
+          log.log(Level.FINE, "failed to index " + _url, e);
+        }
+      });
+
+      _modifyCount++;
+      _store.modified(this);
+    }
+
+    for (Result<User> waiter : waiters) {
+      waiter.complete(_user);
+    }
+  }
+
+  private void onStoreLoadFailed(Throwable e)
+  {
+    ArrayList<Result<User>> waiters = _loadWaiters;
+    _loadWaiters = null;
+
+    for (Result<User> waiter : waiters) {
+      waiter.fail(e);
+    }
   }
 
-  private Void onLoadComplete(User user)
+  private void onLoadComplete(User user)
   {
     _user = user;
+    _isLoaded = true;
+
+    _view = UserView.create(_address);
+    _view.publish(user);
 
-    return null;
+    _cache.loaded(this);
   }
 
+  /**
+   * Called by the cache to release this child's {@code User}.  A dirty user is
+   * written first, together with the parent's other dirty children, and
+   * released once the write completes; the next call loads it again.
+   *
+   * <p>Baratine keeps the child itself in its own LRU until it destroys it.
+   * An unloaded child holds only its URL and references to the parent's
+   * shared objects.
+   */
+  void unload()
+  {
+    if (! isDirty()) {
+      release();
+
+      return;
+    }
+
+    _store.save(this, new Result<Void>() {
+      @Override
+      public void complete(Void value)
+      {
+        // a call while the write was in flight put it back in the cache
+        if (! isDirty() && ! _cache.isLoaded(UserServiceImpl.this)) {
+          release();
+        }
+      }
+
+      @Override
+      public void fail(Throwable e)
+      {
+        log.log(Level.WARNING, "failed to write " + _url + " on unload", e);
+
+        // still dirty: keep the user, and let the cache unload it again later
+        _cache.reload(UserServiceImpl.this);
+      }
+    });
+  }
+
+  private void release()
+  {
+    _user = null;
+    _isLoaded = false;
+
+    UserView.remove(_address, _view);
+    _view = null;
+  }
+
+  /**
+   * Completes once this child's user is written.  The write is usually
+   * already in flight, started by the save of another dirty child.
+   */
   @OnSave
   public void onSave(Result<Void> result)
   {
-    if (_user != null) {
-      _store.put("user", _user, result);
-    }
-    else {
-      _store.remove("user", result);
-    }
+    _store.save(this, result);
+  }
+
+  private boolean isDirty()
+  {
+    return _writeCount < _modifyCount;
   }
 
-  @OnActive
-  public void onActive(Result<Void> result)
+  /**
+   * Called by the {@code UserStore} when a write of the first
+   * {@code modifyCount} modifications has completed.
+   */
+  void onWriteComplete(int modifyCount)
   {
-    System.out.println("user service is now active");
+    // modifications made while the write was in flight are still dirty, and
+    // a later write may already have completed
+    _writeCount = Math.max(_writeCount, modifyCount);
+  }
+
+  @OnDestroy
+  public void onDestroy(Result<Void> result)
+  {
+    _cache.remove(this);
+
+    if (_view != null) {
+      UserView.remove(_address, _view);
+    }
 
     result.complete(null);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,244 @@
+package tutorial.children;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import io.baratine.core.Result;
+import io.baratine.core.ServiceRef;
+import io.baratine.store.Store;
+
+/**
+ * The parent's {@code Store} of users, keyed by child URL, and the
+ * write-behind that groups the children's writes to it.
+ *
+ * <p>A child reports each modification here.  The first save or unload that
+ * needs a dirty child written writes every dirty child at once, sorted by
+ * URL, so a checkpoint of many children becomes one ordered burst of writes,
+ * and a child written by that burst has nothing left to write when its own
+ * save arrives.  The burst starts from the save that needs it rather than
+ * from a later batch, so a save never waits on a flush that isn't coming.
+ *
+ * <p>Users written before this layout are in the child's own partition,
+ * {@code <store>/<url>}, under the key {@code "user"}.  A child that finds
+ * its user only there is written here on its next save.
+ *
+ * <p>Children share the parent's inbox, so this is only ever used from one
+ * thread.
+ */
+public class UserStore
+{
+  private final ServiceRef _storeRef;
+  private final Store<User> _store;
+
+  // children modified since their last write started, sorted by URL
+  private TreeMap<String,UserServiceImpl> _dirty = new TreeMap<>();
+
+  // the latest write of each child that hasn't completed
+  private final HashMap<String,PendingWrite> _inFlight = new HashMap<>();
+
+  private long _flushCount;
+  private long _writeCount;
+
+  @SuppressWarnings("unchecked")
+  UserStore(ServiceRef storeRef)
+  {
+    _storeRef = storeRef;
+    _store = storeRef.as(Store.class);
+  }
+
+  void get(String url, Result<User> result)
+  {
+    _store.get(url, result);
+  }
+
+  /**
+   * Gets a user stored in the child's own partition, before this layout.
+   */
+  void getLegacy(String url, Result<User> result)
+  {
+    getLegacyStore(url).get("user", result);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Store<User> getLegacyStore(String url)
+  {
+    return _storeRef.lookup(url).as(Store.class);
+  }
+
+  /**
+   * Called when a child's user changes.
+   */
+  void modified(UserServiceImpl child)
+  {
+    _dirty.put(child.getUrl(), child);
+  }
+
+  /**
+   * Completes once every modification of {@code child} so far is written.
+   */
+  void save(UserServiceImpl child, Result<Void> result)
+  {
+    if (_dirty.containsKey(child.getUrl())) {
+      flush();
+    }
+
+    PendingWrite write = _inFlight.get(child.getUrl());
+
+    if (write != null) {
+      write.add(result);
+    }
+    else {
+      result.complete(null);
+    }
+  }
+
+  /**
+   * Completes once every modification of every child so far is written.
+   */
+  void saveAll(Result<Void> result)
+  {
+    if (! _dirty.isEmpty()) {
+      flush();
+    }
+
+    if (_inFlight.isEmpty()) {
+      result.complete(null);
+
+      return;
+    }
+
+    SaveJoin join = new SaveJoin(_inFlight.size(), result);
+
+    for (PendingWrite write : _inFlight.values()) {
+      write.add(join);
+    }
+  }
+
+  /**
+   * Writes every dirty child, in URL order.
+   */
+  private void flush()
+  {
+    TreeMap<String,UserServiceImpl> dirty = _dirty;
+    _dirty = new TreeMap<>();
+
+    _flushCount++;
+
+    for (UserServiceImpl child : dirty.values()) {
+      PendingWrite write = new PendingWrite(child);
+
+      // a write of the same key behind an older one replaces it
+      _inFlight.put(child.getUrl(), write);
+      _writeCount++;
+
+      write.write();
+    }
+  }
+
+  long getFlushCount()
+  {
+    return _flushCount;
+  }
+
+  long getWriteCount()
+  {
+    return _writeCount;
+  }
+
+  private class PendingWrite implements Result<Void>
+  {
+    private final UserServiceImpl _child;
+    private final User _user;
+    private final int _modifyCount;
+
+    private final ArrayList<Result<Void>> _results = new ArrayList<>();
+
+    PendingWrite(UserServiceImpl child)
+    {
+      _child = child;
+      _user = child.getUser();
+      _modifyCount = child.getModifyCount();
+    }
+
+    void add(Result<Void> result)
+    {
+      _results.add(result);
+    }
+
+    void write()
+    {
+      String url = _child.getUrl();
+
+      if (_user != null) {
+        _store.put(url, _user, this);
+      }
+      else {
+        // the legacy copy would otherwise come back on the next load
+        SaveJoin join = new SaveJoin(2, this);
+
+        _store.remove(url, join);
+        getLegacyStore(url).remove("user", join);
+      }
+    }
+
+    @Override
+    public void complete(Void value)
+    {
+      _inFlight.remove(_child.getUrl(), this);
+
+      _child.onWriteComplete(_modifyCount);
+
+      for (Result<Void> result : _results) {
+        result.complete(null);
+      }
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      _inFlight.remove(_child.getUrl(), this);
+
+      // still dirty, so the next save writes it again
+      _dirty.putIfAbsent(_child.getUrl(), _child);
+
+      for (Result<Void> result : _results) {
+        result.fail(e);
+      }
+    }
+  }
+
+  /**
+   * Completes once every write has completed.
+   */
+  private static class SaveJoin implements Result<Void>
+  {
+    private final Result<Void> _result;
+    private int _pending;
+    private boolean _isFailed;
+
+    SaveJoin(int pending, Result<Void> result)
+    {
+      _pending = pending;
+      _result = result;
+    }
+
+    @Override
+    public void complete(Void value)
+    {
+      if (--_pending == 0 && ! _isFailed) {
+        _result.complete(null);
+      }
+    }
+
+    @Override
+    public void fail(Throwable e)
+    {
+      if (! _isFailed) {
+        _isFailed = true;
+
+        _result.fail(e);
+      }
+    }
+  }
+}
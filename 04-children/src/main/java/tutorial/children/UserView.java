@@ -0,0 +1,52 @@
+package tutorial.children;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last {@link User} a user service published, readable from any thread
+ * without going through the service's inbox.  {@code User} is immutable, so
+ * the published reference is a consistent snapshot.
+ *
+ * <p>A view exists only while its child service is loaded.  When
+ * {@link #lookup} returns null, fall back to the service's {@code get()}.
+ */
+public final class UserView
+{
+  private static final ConcurrentHashMap<String,UserView> _views
+    = new ConcurrentHashMap<>();
+
+  private volatile User _user;
+
+  private UserView()
+  {
+  }
+
+  /**
+   * Returns the view of the user service at {@code address}, or null if it is
+   * not loaded in this JVM.
+   */
+  public static UserView lookup(String address)
+  {
+    return _views.get(address);
+  }
+
+  static UserView create(String address)
+  {
+    return _views.computeIfAbsent(address, a -> new UserView());
+  }
+
+  static void remove(String address, UserView view)
+  {
+    _views.remove(address, view);
+  }
+
+  public User get()
+  {
+    return _user;
+  }
+
+  void publish(User user)
+  {
+    _user = user;
+  }
+}
@@ -1,10 +1,20 @@
 package tutorial.children;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 
+import io.baratine.core.Journal;
 import io.baratine.core.Lookup;
+import io.baratine.core.ResultFuture;
+import io.baratine.core.ResultStream;
+import io.baratine.core.Service;
 import io.baratine.core.ServiceRef;
-import tutorial.children.UserServiceImpl;
+import io.baratine.store.Store;
 import tutorial.children.UserServiceSync;
 
 import org.junit.Assert;
@@ -15,7 +25,9 @@ import com.caucho.junit.ConfigurationBaratine;
 import com.caucho.junit.RunnerBaratine;
 
 @RunWith(RunnerBaratine.class)
-@ConfigurationBaratine(services = {UserServiceImpl.class}, pod = "pod",
+@ConfigurationBaratine(services = {UserManagerImpl.class, UserIndexServiceImpl.class,
+                                   UserServiceTest.SmallUserManagerImpl.class,
+                                   UserServiceTest.SmallUserIndexServiceImpl.class}, pod = "pod",
   logs = {@ConfigurationBaratine.Log(name = "com.caucho", level = "WARNING"),
           @ConfigurationBaratine.Log(name = "tutorial", level = "FINER")})
 public class UserServiceTest
@@ -23,6 +35,18 @@ public class UserServiceTest
   @Inject @Lookup("public:///user")
   private ServiceRef _baseRef;
 
+  @Inject @Lookup("public:///user-small")
+  private ServiceRef _smallRef;
+
+  @Inject @Lookup("store:///user-small")
+  private ServiceRef _smallStoreRef;
+
+  @Inject @Lookup("public:///user-index")
+  private UserIndexService _index;
+
+  @Inject @Lookup("public:///user-index-small")
+  private ServiceRef _smallIndexRef;
+
   @Inject
   private RunnerBaratine _testContext;
 
@@ -39,16 +63,392 @@ public class UserServiceTest
     Assert.assertEquals(true, service.set(user));
   }
 
+  @Test
+  public void testCacheStats()
+    throws Exception
+  {
+    UserManagerSync manager = _baseRef.as(UserManagerSync.class);
+    UserServiceSync service = _baseRef.lookup("/testCacheStats").as(UserServiceSync.class);
+
+    UserCacheStats before = manager.getCacheStats();
+
+    service.set(new User("first0", "last0"));
+    service.get();
+
+    UserCacheStats after = manager.getCacheStats();
+
+    Assert.assertTrue(before.getHits() < after.getHits());
+    Assert.assertEquals(UserManagerImpl.DEFAULT_CAPACITY, after.getCapacity());
+  }
+
+  @Test
+  public void testEvict()
+    throws Exception
+  {
+    UserManagerSync manager = _smallRef.as(UserManagerSync.class);
+
+    for (int i = 0; i < 5; i++) {
+      UserServiceSync service = _smallRef.lookup("/testEvict" + i).as(UserServiceSync.class);
+
+      service.set(new User("first" + i, "last" + i));
+    }
+
+    UserCacheStats stats = manager.getCacheStats();
+
+    Assert.assertEquals(2, stats.getSize());
+    Assert.assertTrue(3 <= stats.getEvictions());
+
+    // the evicted users were written on unload and load again from the store
+    for (int i = 0; i < 5; i++) {
+      UserServiceSync service = _smallRef.lookup("/testEvict" + i).as(UserServiceSync.class);
+
+      Assert.assertEquals("last" + i, service.get().getLast());
+    }
+
+    Assert.assertTrue(stats.getMisses() < manager.getCacheStats().getMisses());
+    Assert.assertEquals(2, manager.getCacheStats().getSize());
+  }
+
+  @Test
+  public void testGetAll()
+    throws Exception
+  {
+    UserManagerSync manager = _baseRef.as(UserManagerSync.class);
+
+    _baseRef.lookup("/testGetAll0").as(UserServiceSync.class).set(new User("first0", "last0"));
+    _baseRef.lookup("/testGetAll1").as(UserServiceSync.class).set(new User("first1", "last1"));
+
+    Map<String,User> users
+      = manager.getAll(Arrays.asList("testGetAll0", "testGetAll1", "testGetAllNone"));
+
+    Assert.assertEquals(2, users.size());
+    Assert.assertEquals("last0", users.get("testGetAll0").getLast());
+    Assert.assertEquals("last1", users.get("testGetAll1").getLast());
+  }
+
+  @Test
+  public void testAbsent()
+    throws Exception
+  {
+    UserManagerSync manager = _baseRef.as(UserManagerSync.class);
+    UserServiceSync service = _baseRef.lookup("/testAbsent").as(UserServiceSync.class);
+
+    Assert.assertNull(service.get());
+
+    long absentHits = manager.getCacheStats().getAbsentHits();
+
+    Assert.assertEquals(0, manager.getAll(Arrays.asList("testAbsent")).size());
+    Assert.assertEquals(absentHits + 1, manager.getCacheStats().getAbsentHits());
+
+    // a set() clears the negative entry
+    service.set(new User("first0", "last0"));
+
+    Assert.assertEquals(1, manager.getAll(Arrays.asList("testAbsent")).size());
+
+    // an unloaded child still skips its store read when it loads again
+    UserManagerSync small = _smallRef.as(UserManagerSync.class);
+    String url = "/testAbsentSmall";
+
+    Assert.assertNull(_smallRef.lookup(url).as(UserServiceSync.class).get());
+
+    long evictions = small.getCacheStats().getEvictions();
+
+    // users that exist, so they don't push it out of the absent set
+    _smallRef.lookup("/testAbsent0").as(UserServiceSync.class).set(new User("first0", "last0"));
+    _smallRef.lookup("/testAbsent1").as(UserServiceSync.class).set(new User("first1", "last1"));
+
+    Assert.assertTrue(evictions < small.getCacheStats().getEvictions());
+
+    absentHits = small.getCacheStats().getAbsentHits();
+
+    Assert.assertNull(_smallRef.lookup(url).as(UserServiceSync.class).get());
+    Assert.assertEquals(absentHits + 1, small.getCacheStats().getAbsentHits());
+  }
+
+  @Test
+  public void testIndex()
+    throws Exception
+  {
+    UserServiceSync service0 = _baseRef.lookup("/testIndex0").as(UserServiceSync.class);
+    UserServiceSync service1 = _baseRef.lookup("/testIndex1").as(UserServiceSync.class);
+
+    service0.set(new User("first0", "testIndexSmith"));
+    service1.set(new User("first1", "testIndexSmythe"));
+
+    StreamFuture<String> exact = new StreamFuture<>();
+    _index.findByLast("testIndexSmith", exact);
+
+    Assert.assertEquals(1, exact.get().size());
+    Assert.assertTrue(exact.get().get(0).endsWith("testIndex0"));
+
+    StreamFuture<String> prefix = new StreamFuture<>();
+    _index.findByLastPrefix("testIndexSm", prefix);
+
+    Assert.assertEquals(2, prefix.get().size());
+
+    // a set() moves the user to its new entry
+    service0.set(new User("first0", "testIndexJones"));
+
+    StreamFuture<String> moved = new StreamFuture<>();
+    _index.findByLast("testIndexSmith", moved);
+
+    Assert.assertEquals(0, moved.get().size());
+  }
+
+  @Test
+  public void testIndexedReload()
+    throws Exception
+  {
+    String url = "/testIndexedReload";
+    User user = new User("first0", "testIndexedReload");
+
+    _smallRef.lookup(url).as(UserServiceSync.class).set(user);
+
+    // evicts and writes it
+    _smallRef.lookup("/testIndexedReload0").as(UserServiceSync.class).set(new User("first0", "last0"));
+    _smallRef.lookup("/testIndexedReload1").as(UserServiceSync.class).set(new User("first1", "last1"));
+
+    // drops its entry, which a backfill on reload would put back
+    update(_index, url, user, null);
+
+    Assert.assertEquals("testIndexedReload",
+                        _smallRef.lookup(url).as(UserServiceSync.class).get().getLast());
+
+    StreamFuture<String> ids = new StreamFuture<>();
+    _index.findByLast("testIndexedReload", ids);
+
+    Assert.assertEquals(0, ids.get().size());
+  }
+
+  @Test
+  public void testIndexRestart()
+    throws Exception
+  {
+    UserIndexService index = _smallIndexRef.as(UserIndexService.class);
+    User []users = new User[8];
+
+    // blocks of two entries, so the saves split blocks across several keys
+    for (int i = 0; i < 7; i++) {
+      users[i] = new User("first" + i, "testIndexRestart" + i);
+
+      update(index, "id" + i, null, users[i]);
+    }
+
+    save(_smallIndexRef);
+
+    // changes a few blocks and empties one
+    update(index, "id0", users[0], null);
+    update(index, "id3", users[3], new User("first3", "testIndexRestartMoved"));
+
+    save(_smallIndexRef);
+
+    // only in the journal
+    users[7] = new User("first7", "testIndexRestart7");
+    update(index, "id7", null, users[7]);
+
+    restartBaratine();
+
+    index = _smallIndexRef.as(UserIndexService.class);
+
+    for (int i = 0; i < 8; i++) {
+      StreamFuture<String> ids = new StreamFuture<>();
+      index.findByLast("testIndexRestart" + i, ids);
+
+      if (i == 0 || i == 3) {
+        Assert.assertEquals(0, ids.get().size());
+      }
+      else {
+        Assert.assertEquals(Arrays.asList("id" + i), ids.get());
+      }
+    }
+
+    StreamFuture<String> moved = new StreamFuture<>();
+    index.findByLast("testIndexRestartMoved", moved);
+
+    Assert.assertEquals(Arrays.asList("id3"), moved.get());
+
+    StreamFuture<String> first = new StreamFuture<>();
+    index.findByFirst("first5", first);
+
+    Assert.assertEquals(Arrays.asList("id5"), first.get());
+  }
+
+  private void update(UserIndexService index, String id, User oldUser, User newUser)
+    throws Exception
+  {
+    ResultFuture<Void> future = new ResultFuture<>();
+    index.update(id, oldUser, newUser, future);
+    future.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testSaveWrites()
+    throws Exception
+  {
+    UserManagerSync manager = _baseRef.as(UserManagerSync.class);
+    ServiceRef childRef = _baseRef.lookup("/testSaveWrites");
+
+    // writes any users the other tests left dirty
+    save(_baseRef);
+
+    childRef.as(UserServiceSync.class).set(new User("first0", "last0"));
+
+    long writes = manager.getCacheStats().getWrites();
+
+    save(childRef);
+
+    Assert.assertEquals(writes + 1, manager.getCacheStats().getWrites());
+
+    // nothing changed, so the second save doesn't touch the store
+    save(childRef);
+
+    Assert.assertEquals(writes + 1, manager.getCacheStats().getWrites());
+
+    // only in the journal after the skipped save
+    childRef.as(UserServiceSync.class).set(new User("first1", "last1"));
+
+    restartBaratine();
+
+    User user = _baseRef.lookup("/testSaveWrites").as(UserServiceSync.class).get();
+
+    Assert.assertEquals("last1", user.getLast());
+  }
+
+  @Test
+  public void testGroupedWrites()
+    throws Exception
+  {
+    UserManagerSync manager = _baseRef.as(UserManagerSync.class);
+
+    // writes any users the other tests left dirty
+    save(_baseRef);
+
+    UserCacheStats before = manager.getCacheStats();
+
+    for (int i = 0; i < 3; i++) {
+      UserServiceSync service
+        = _baseRef.lookup("/testGroupedWrites" + i).as(UserServiceSync.class);
+
+      service.set(new User("first" + i, "last" + i));
+    }
+
+    // the first child's save writes all three
+    save(_baseRef.lookup("/testGroupedWrites1"));
+
+    UserCacheStats after = manager.getCacheStats();
+
+    Assert.assertEquals(before.getFlushes() + 1, after.getFlushes());
+    Assert.assertEquals(before.getWrites() + 3, after.getWrites());
+
+    save(_baseRef.lookup("/testGroupedWrites0"));
+    save(_baseRef.lookup("/testGroupedWrites2"));
+
+    Assert.assertEquals(after.getWrites(), manager.getCacheStats().getWrites());
+
+    restartBaratine();
+
+    for (int i = 0; i < 3; i++) {
+      UserServiceSync service
+        = _baseRef.lookup("/testGroupedWrites" + i).as(UserServiceSync.class);
+
+      Assert.assertEquals("last" + i, service.get().getLast());
+    }
+  }
+
+  @Test
+  public void testLegacyUser()
+    throws Exception
+  {
+    // a user saved in the child's own partition, before the UserStore layout
+    @SuppressWarnings("unchecked")
+    Store<User> legacy = _smallStoreRef.lookup("/testLegacyUser").as(Store.class);
+
+    ResultFuture<Void> putFuture = new ResultFuture<>();
+    legacy.put("user", new User("first0", "last0"), putFuture);
+    putFuture.get(10, TimeUnit.SECONDS);
+
+    ServiceRef childRef = _smallRef.lookup("/testLegacyUser");
+
+    Assert.assertEquals("last0", childRef.as(UserServiceSync.class).get().getLast());
+
+    // the next save moves it to the parent's store
+    save(childRef);
+
+    @SuppressWarnings("unchecked")
+    Store<User> store = _smallStoreRef.as(Store.class);
+
+    ResultFuture<User> getFuture = new ResultFuture<>();
+    store.get("/testLegacyUser", getFuture);
+
+    Assert.assertEquals("last0", getFuture.get(10, TimeUnit.SECONDS).getLast());
+
+    // removing the user removes the legacy copy too
+    childRef.as(UserServiceSync.class).set(null);
+    save(childRef);
+
+    getFuture = new ResultFuture<>();
+    legacy.get("user", getFuture);
+
+    Assert.assertNull(getFuture.get(10, TimeUnit.SECONDS));
+
+    restartBaratine();
+
+    Assert.assertNull(_smallRef.lookup("/testLegacyUser").as(UserServiceSync.class).get());
+  }
+
   @Test
   public void testRestart()
     throws Exception
   {
+    ServiceRef childRef = _baseRef.lookup("/testRestart");
+
+    childRef.as(UserServiceSync.class).set(new User("first0", "last0"));
+    save(childRef);
+
+    restartBaratine();
+
+    User user = _baseRef.lookup("/testRestart").as(UserServiceSync.class).get();
+
+    Assert.assertEquals("first0", user.getFirst());
+    Assert.assertEquals("last0", user.getLast());
+  }
+
+  private void save(ServiceRef ref)
+    throws Exception
+  {
+    ResultFuture<Boolean> future = new ResultFuture<>();
+    ref.save(future);
+    future.get(10, TimeUnit.SECONDS);
+  }
 
+  static class StreamFuture<T> implements ResultStream<T>
+  {
+    private final ArrayList<T> _values = new ArrayList<>();
+    private final ResultFuture<List<T>> _future = new ResultFuture<>();
 
+    @Override
+    public void accept(T value)
+    {
+      _values.add(value);
+    }
 
-    //restartBaratine();
+    @Override
+    public void complete()
+    {
+      _future.complete(_values);
+    }
 
+    @Override
+    public void fail(Throwable e)
+    {
+      _future.fail(e);
+    }
 
+    public List<T> get()
+      throws Exception
+    {
+      return _future.get(10, TimeUnit.SECONDS);
+    }
   }
 
   private void restartBaratine()
@@ -57,4 +457,24 @@ public class UserServiceTest
     _testContext.closeImmediate();
     _testContext.start();
   }
+
+  @Journal
+  @Service("public:///user-small")
+  public static class SmallUserManagerImpl extends UserManagerImpl
+  {
+    public SmallUserManagerImpl()
+    {
+      super("store:///user-small", 2, 2);
+    }
+  }
+
+  @Journal
+  @Service("public:///user-index-small")
+  public static class SmallUserIndexServiceImpl extends UserIndexServiceImpl
+  {
+    public SmallUserIndexServiceImpl()
+    {
+      super("store:///user-index-small", 2);
+    }
+  }
 }
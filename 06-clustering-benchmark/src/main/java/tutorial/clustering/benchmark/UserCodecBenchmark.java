@@ -0,0 +1,122 @@
+package tutorial.clustering.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tutorial.clustering.User;
+import tutorial.clustering.UserCodec;
+
+/**
+ * Cost of encoding and decoding a User in each format.
+ *
+ * <pre>
+ *   format=codec         - UserCodec, as used inside the pod
+ *   format=serialization - Java serialization, as User was stored before
+ * </pre>
+ *
+ * The encoded sizes are printed before the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class UserCodecBenchmark
+{
+  @Param({"codec", "serialization"})
+  public String format;
+
+  private User _user;
+  private byte []_data;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws Exception
+  {
+    _user = newUser();
+    _data = encode(format, _user);
+  }
+
+  @Benchmark
+  public byte []encode()
+    throws Exception
+  {
+    return encode(format, _user);
+  }
+
+  @Benchmark
+  public User decode()
+    throws Exception
+  {
+    return decode(format, _data);
+  }
+
+  private static User newUser()
+  {
+    return new User("first0", "last0");
+  }
+
+  private static byte []encode(String format, User user)
+    throws IOException
+  {
+    if ("codec".equals(format)) {
+      return UserCodec.CODEC.encode(user);
+    }
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(user);
+    }
+
+    return bos.toByteArray();
+  }
+
+  private static User decode(String format, byte []data)
+    throws Exception
+  {
+    if ("codec".equals(format)) {
+      return UserCodec.CODEC.decode(data);
+    }
+
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+      return (User) in.readObject();
+    }
+  }
+
+  public static void main(String []args)
+    throws Exception
+  {
+    User user = newUser();
+
+    System.out.println("codec:         " + encode("codec", user).length + " bytes");
+    System.out.println("serialization: " + encode("serialization", user).length + " bytes");
+
+    Options options = new OptionsBuilder()
+      .include(UserCodecBenchmark.class.getSimpleName())
+      .build();
+
+    new Runner(options).run();
+  }
+}
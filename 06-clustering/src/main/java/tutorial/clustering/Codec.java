@@ -0,0 +1,12 @@
+package tutorial.clustering;
+
+/**
+ * Encodes values to and from a compact binary form, for storing them and
+ * sending them between pods without Java serialization.
+ */
+public interface Codec<T>
+{
+  byte []encode(T value);
+
+  T decode(byte []data);
+}
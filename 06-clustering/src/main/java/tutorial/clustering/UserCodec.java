@@ -0,0 +1,121 @@
+package tutorial.clustering;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of a {@link User}: a version byte, then each field as a
+ * 4-byte big-endian length followed by its UTF-8 bytes.  A length of -1 is a
+ * null field.  There is no reflection and no class descriptor.
+ *
+ * <p>{@link #decode} throws {@code IllegalArgumentException} for empty,
+ * truncated or otherwise malformed input.
+ */
+public class UserCodec implements Codec<User>
+{
+  public static final UserCodec CODEC = new UserCodec();
+
+  public static final int VERSION = 1;
+
+  @Override
+  public byte []encode(User user)
+  {
+    byte []first = toBytes(user.getFirst());
+    byte []last = toBytes(user.getLast());
+
+    byte []data = new byte[1 + length(first) + length(last)];
+
+    data[0] = (byte) VERSION;
+
+    int offset = writeField(data, 1, first);
+    writeField(data, offset, last);
+
+    return data;
+  }
+
+  @Override
+  public User decode(byte []data)
+  {
+    if (data == null || data.length == 0) {
+      throw new IllegalArgumentException("empty User encoding");
+    }
+
+    int version = data[0] & 0xff;
+
+    if (version != VERSION) {
+      throw new IllegalArgumentException("unknown User encoding version: " + version);
+    }
+
+    int offset = 1;
+
+    int firstLength = readLength(data, offset);
+    offset += 4;
+    String first = readString(data, offset, firstLength);
+    offset += Math.max(firstLength, 0);
+
+    int lastLength = readLength(data, offset);
+    offset += 4;
+    String last = readString(data, offset, lastLength);
+    offset += Math.max(lastLength, 0);
+
+    if (offset != data.length) {
+      throw new IllegalArgumentException("User encoding has " + (data.length - offset)
+                                         + " trailing bytes");
+    }
+
+    return new User(first, last);
+  }
+
+  private static byte []toBytes(String value)
+  {
+    return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+  }
+
+  private static int length(byte []field)
+  {
+    return 4 + (field != null ? field.length : 0);
+  }
+
+  private static int writeField(byte []data, int offset, byte []field)
+  {
+    int length = field != null ? field.length : -1;
+
+    data[offset] = (byte) (length >> 24);
+    data[offset + 1] = (byte) (length >> 16);
+    data[offset + 2] = (byte) (length >> 8);
+    data[offset + 3] = (byte) length;
+
+    if (field != null) {
+      System.arraycopy(field, 0, data, offset + 4, field.length);
+    }
+
+    return offset + length(field);
+  }
+
+  /**
+   * Reads a field length, checking that the field fits in {@code data}.
+   */
+  private static int readLength(byte []data, int offset)
+  {
+    if (data.length < offset + 4) {
+      throw new IllegalArgumentException("truncated User encoding: no field length at "
+                                         + offset + " of " + data.length + " bytes");
+    }
+
+    int length = ((data[offset] & 0xff) << 24)
+                 | ((data[offset + 1] & 0xff) << 16)
+                 | ((data[offset + 2] & 0xff) << 8)
+                 | (data[offset + 3] & 0xff);
+
+    if (length < -1 || data.length - (offset + 4) < length) {
+      throw new IllegalArgumentException("truncated User encoding: field length " + length
+                                         + " at " + offset + " of " + data.length + " bytes");
+    }
+
+    return length;
+  }
+
+  private static String readString(byte []data, int offset, int length)
+  {
+    return length >= 0 ? new String(data, offset, length, StandardCharsets.UTF_8) : null;
+  }
+}
@@ -17,28 +17,32 @@ public class UserFacadeImpl
   @OnLookup
   public UserFacadeChild onLookup(String url)
   {
-    UserService service = _ref.lookup(url).as(UserService.class);
+    UserServiceBinary service = _ref.lookup(url).as(UserServiceBinary.class);
 
     return new UserFacadeChild(service);
   }
 
+  /**
+   * Talks to the pod in the UserCodec encoding and converts at the edge, so
+   * only compact byte arrays cross between pods.
+   */
   static class UserFacadeChild implements UserService
   {
-    private UserService _service;
+    private UserServiceBinary _service;
 
-    public UserFacadeChild(UserService service)
+    public UserFacadeChild(UserServiceBinary service)
     {
       _service = service;
     }
 
     public void get(Result<User> result)
     {
-      _service.get(result);
+      _service.getBinary(result.from(data -> data != null ? UserCodec.CODEC.decode(data) : null));
     }
 
     public void set(User user, Result<Boolean> result)
     {
-      _service.set(user, result);
+      _service.setBinary(user != null ? UserCodec.CODEC.encode(user) : null, result);
     }
   }
 }
@@ -22,7 +22,7 @@ public class UserManagerImpl
   public UserServiceImpl onLookup(String url)
   {
     // give the child its partition of the Store
-    Store<User> store = _storeRef.lookup(url).as(Store.class);
+    Store<?> store = _storeRef.lookup(url).as(Store.class);
 
     return new UserServiceImpl(store);
   }
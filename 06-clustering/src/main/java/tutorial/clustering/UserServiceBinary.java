@@ -0,0 +1,14 @@
+package tutorial.clustering;
+
+import io.baratine.core.Result;
+
+/**
+ * The pod-internal form of {@link UserService}, with users encoded by
+ * {@link UserCodec} instead of Java serialization.
+ */
+public interface UserServiceBinary
+{
+  void getBinary(Result<byte[]> result);
+
+  void setBinary(byte []data, Result<Boolean> result);
+}
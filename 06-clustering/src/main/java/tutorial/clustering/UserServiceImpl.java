@@ -6,14 +6,26 @@ import io.baratine.core.OnSave;
 import io.baratine.core.Result;
 import io.baratine.store.Store;
 
-public class UserServiceImpl
+public class UserServiceImpl implements UserService, UserServiceBinary
 {
   private User _user;
-  private Store<User> _store;
 
-  public UserServiceImpl(Store<User> store)
+  // _user encoded by UserCodec, or null until it is needed; never handed
+  // out, so callers can't change it under the cache
+  private byte []_data;
+
+  // modifications since the last completed save; a user that has not
+  // changed is never written
+  private int _modifyCount;
+
+  // values are byte[] in the UserCodec encoding, or a serialized User
+  // written before the encoding was introduced
+  private Store<Object> _store;
+
+  @SuppressWarnings("unchecked")
+  public UserServiceImpl(Store<?> store)
   {
-    _store = store;
+    _store = (Store<Object>) store;
   }
 
   public void get(Result<User> result)
@@ -25,19 +37,63 @@ public class UserServiceImpl
   public void set(User user, Result<Boolean> result)
   {
     _user = user;
+    _data = null;
+    _modifyCount++;
 
     result.complete(true);
   }
 
+  public void getBinary(Result<byte[]> result)
+  {
+    byte []data = getData();
+
+    result.complete(data != null ? data.clone() : null);
+  }
+
+  @Modify
+  public void setBinary(byte []data, Result<Boolean> result)
+  {
+    _user = data != null ? UserCodec.CODEC.decode(data) : null;
+    _data = data != null ? data.clone() : null;
+    _modifyCount++;
+
+    result.complete(true);
+  }
+
+  private byte []getData()
+  {
+    if (_data == null && _user != null) {
+      _data = UserCodec.CODEC.encode(_user);
+    }
+
+    return _data;
+  }
+
   @OnLoad
   public void onLoad(Result<Void> result)
   {
     _store.get("user", result.from(value -> onLoadComplete(value)));
   }
 
-  private Void onLoadComplete(User user)
+  private Void onLoadComplete(Object value)
   {
-    _user = user;
+    if (value == null) {
+      _user = null;
+      _data = null;
+    }
+    else if (value instanceof byte[]) {
+      _data = (byte[]) value;
+      _user = UserCodec.CODEC.decode(_data);
+    }
+    else if (value instanceof User) {
+      // saved in the old format; the next save rewrites it in the new one
+      _user = (User) value;
+      _data = null;
+      _modifyCount++;
+    }
+    else {
+      throw new IllegalStateException("unexpected stored user: " + value.getClass().getName());
+    }
 
     return null;
   }
@@ -45,11 +101,28 @@ public class UserServiceImpl
   @OnSave
   public void onSave(Result<Void> result)
   {
+    if (_modifyCount == 0) {
+      result.complete(null);
+
+      return;
+    }
+
+    int modifyCount = _modifyCount;
+    Result<Void> saveResult = result.from(v -> onSaveComplete(modifyCount));
+
     if (_user != null) {
-      _store.put("user", _user, result);
+      _store.put("user", getData(), saveResult);
     }
     else {
-      _store.remove("user", result);
+      _store.remove("user", saveResult);
     }
   }
+
+  private Void onSaveComplete(int modifyCount)
+  {
+    // modifications made while the write was in flight are still dirty
+    _modifyCount -= modifyCount;
+
+    return null;
+  }
 }
@@ -1,9 +1,17 @@
 package tutorial.clustering;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 
+import io.baratine.core.Journal;
 import io.baratine.core.Lookup;
+import io.baratine.core.ResultFuture;
+import io.baratine.core.Service;
 import io.baratine.core.ServiceRef;
+import io.baratine.store.Store;
+import tutorial.clustering.UserFacadeImpl.UserFacadeChild;
 import tutorial.clustering.User;
 import tutorial.clustering.UserServiceImpl;
 import tutorial.clustering.UserServiceSync;
@@ -16,40 +24,214 @@ import com.caucho.junit.ConfigurationBaratine;
 import com.caucho.junit.RunnerBaratine;
 
 @RunWith(RunnerBaratine.class)
-@ConfigurationBaratine(services = {UserServiceImpl.class}, pod = "pod",
+@ConfigurationBaratine(services = {UserServiceImpl.class,
+                                   UserServiceTest.LocalUserManagerImpl.class}, pod = "pod",
   logs = {@ConfigurationBaratine.Log(name = "com.caucho", level = "WARNING"),
           @ConfigurationBaratine.Log(name = "tutorial", level = "FINER")})
 public class UserServiceTest
 {
-  @Inject @Lookup("public:///user")
-  private ServiceRef _baseRef;
+  @Inject @Lookup("public:///user-local")
+  private ServiceRef _localRef;
+
+  @Inject @Lookup("store:///user")
+  private ServiceRef _storeRef;
 
   @Inject
   private RunnerBaratine _testContext;
 
-  //@Test
+  @Test
   public void testGet()
     throws Exception
   {
-    UserServiceSync service = _baseRef.lookup("/testGet").as(UserServiceSync.class);
+    UserServiceSync service = _localRef.lookup("/testGet").as(UserServiceSync.class);
 
     Assert.assertEquals(null, service.get());
 
     User user = new User("first0", "last0");
 
     Assert.assertEquals(true, service.set(user));
+
+    Assert.assertEquals("first0", service.get().getFirst());
+  }
+
+  @Test
+  public void testCodec()
+  {
+    User user = new User("first0", "l\u00e4st0");
+
+    byte []data = UserCodec.CODEC.encode(user);
+
+    Assert.assertEquals(UserCodec.VERSION, data[0]);
+
+    User copy = UserCodec.CODEC.decode(data);
+
+    Assert.assertEquals(user.getFirst(), copy.getFirst());
+    Assert.assertEquals(user.getLast(), copy.getLast());
+
+    copy = UserCodec.CODEC.decode(UserCodec.CODEC.encode(new User(null, "last0")));
+
+    Assert.assertNull(copy.getFirst());
+    Assert.assertEquals("last0", copy.getLast());
+  }
+
+  @Test
+  public void testDecodeMalformed()
+  {
+    byte []data = UserCodec.CODEC.encode(new User("first0", "last0"));
+
+    byte []trailing = Arrays.copyOf(data, data.length + 1);
+
+    // a first-field length of -2, and one running past the end
+    byte []negative = data.clone();
+    negative[1] = negative[2] = negative[3] = (byte) 0xff;
+    negative[4] = (byte) 0xfe;
+
+    byte []overrun = data.clone();
+    overrun[4] = (byte) 100;
+
+    assertMalformed(new byte[0]);
+    assertMalformed(trailing);
+    assertMalformed(negative);
+    assertMalformed(overrun);
+
+    for (int i = 1; i < data.length; i++) {
+      assertMalformed(Arrays.copyOf(data, i));
+    }
+  }
+
+  private void assertMalformed(byte []data)
+  {
+    try {
+      UserCodec.CODEC.decode(data);
+
+      Assert.fail("decoded " + Arrays.toString(data));
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testBinaryCopies()
+    throws Exception
+  {
+    // no store is needed until the service is loaded or saved
+    UserServiceImpl service = new UserServiceImpl(null);
+
+    byte []data = UserCodec.CODEC.encode(new User("first0", "last0"));
+    byte []original = data.clone();
+
+    ResultFuture<Boolean> setFuture = new ResultFuture<>();
+    service.setBinary(data, setFuture);
+    Assert.assertEquals(true, setFuture.get(10, TimeUnit.SECONDS));
+
+    // the caller's array isn't kept
+    Arrays.fill(data, (byte) 0);
+
+    byte []copy = getBinary(service);
+    Assert.assertArrayEquals(original, copy);
+
+    // nor is the returned one shared
+    Arrays.fill(copy, (byte) 0);
+
+    Assert.assertArrayEquals(original, getBinary(service));
+  }
+
+  private byte []getBinary(UserServiceBinary service)
+    throws Exception
+  {
+    ResultFuture<byte[]> future = new ResultFuture<>();
+    service.getBinary(future);
+
+    return future.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testFacade()
+    throws Exception
+  {
+    ServiceRef childRef = _localRef.lookup("/testFacade");
+
+    UserFacadeChild facade = new UserFacadeChild(childRef.as(UserServiceBinary.class));
+
+    ResultFuture<User> getFuture = new ResultFuture<>();
+    facade.get(getFuture);
+    Assert.assertNull(getFuture.get(10, TimeUnit.SECONDS));
+
+    ResultFuture<Boolean> setFuture = new ResultFuture<>();
+    facade.set(new User("first0", "l\u00e4st0"), setFuture);
+    Assert.assertEquals(true, setFuture.get(10, TimeUnit.SECONDS));
+
+    getFuture = new ResultFuture<>();
+    facade.get(getFuture);
+    User user = getFuture.get(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals("first0", user.getFirst());
+    Assert.assertEquals("l\u00e4st0", user.getLast());
+
+    // the pod-side service sees the same user
+    user = childRef.as(UserServiceSync.class).get();
+
+    Assert.assertEquals("first0", user.getFirst());
+    Assert.assertEquals("l\u00e4st0", user.getLast());
+  }
+
+  @Test
+  public void testLegacyUser()
+    throws Exception
+  {
+    // a user stored before UserCodec, as a serialized User
+    @SuppressWarnings("unchecked")
+    Store<Object> store = _storeRef.lookup("/testLegacyUser").as(Store.class);
+
+    ResultFuture<Void> putFuture = new ResultFuture<>();
+    store.put("user", new User("first0", "last0"), putFuture);
+    putFuture.get(10, TimeUnit.SECONDS);
+
+    ServiceRef childRef = _localRef.lookup("/testLegacyUser");
+
+    User user = childRef.as(UserServiceSync.class).get();
+
+    Assert.assertEquals("first0", user.getFirst());
+    Assert.assertEquals("last0", user.getLast());
+
+    // the next save rewrites it in the UserCodec encoding
+    save(childRef);
+
+    ResultFuture<Object> getFuture = new ResultFuture<>();
+    store.get("user", getFuture);
+    Object value = getFuture.get(10, TimeUnit.SECONDS);
+
+    Assert.assertTrue(value instanceof byte[]);
+
+    user = UserCodec.CODEC.decode((byte[]) value);
+
+    Assert.assertEquals("first0", user.getFirst());
+    Assert.assertEquals("last0", user.getLast());
   }
 
   @Test
   public void testRestart()
     throws Exception
   {
+    ServiceRef childRef = _localRef.lookup("/testRestart");
 
+    childRef.as(UserServiceSync.class).set(new User("first0", "last0"));
+    save(childRef);
 
+    restartBaratine();
 
-    //restartBaratine();
+    User user = _localRef.lookup("/testRestart").as(UserServiceSync.class).get();
 
+    Assert.assertEquals("first0", user.getFirst());
+    Assert.assertEquals("last0", user.getLast());
+  }
 
+  private void save(ServiceRef ref)
+    throws Exception
+  {
+    ResultFuture<Boolean> future = new ResultFuture<>();
+    ref.save(future);
+    future.get(10, TimeUnit.SECONDS);
   }
 
   private void restartBaratine()
@@ -58,4 +240,13 @@ public class UserServiceTest
     _testContext.closeImmediate();
     _testContext.start();
   }
+
+  /**
+   * The pod's user manager, deployed in the test's own pod.
+   */
+  @Journal
+  @Service("public:///user-local")
+  public static class LocalUserManagerImpl extends UserManagerImpl
+  {
+  }
 }